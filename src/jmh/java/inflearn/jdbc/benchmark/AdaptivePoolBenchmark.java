@@ -0,0 +1,91 @@
+package inflearn.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.connection.AdaptivePoolController;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 스파이크 부하에서 커넥션 획득 시간 - 고정 크기 Hikari 풀 vs AdaptivePoolController
+ *
+ * BURST_PERIOD_MILLIS 마다 BURST_MILLIS 동안만 32 쓰레드가 커넥션을 HOLD_MILLIS 씩 잡고, 나머지 시간은 쉰다.
+ * 측정하는 것은 getConnection() 뿐이고 (SampleTime 의 p0.99 를 본다) 커넥션을 잡고 있는 시간과 쉬는 시간은 Level.Invocation 에서 뺀다.
+ * 고정 풀은 평상시 크기(FIXED_POOL_SIZE) 로 두고, adaptive 는 같은 크기에서 시작해 MAX_POOL_SIZE 까지 늘어난다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(AdaptivePoolBenchmark.THREADS)
+public class AdaptivePoolBenchmark {
+
+    static final int THREADS = 32;
+    private static final int FIXED_POOL_SIZE = 8;
+    private static final int MAX_POOL_SIZE = THREADS;
+    private static final long TARGET_ACQUIRE_MILLIS = 5;
+    private static final long ADJUST_PERIOD_MILLIS = 100;
+    private static final long BURST_PERIOD_MILLIS = 2000;
+    private static final long BURST_MILLIS = 500;
+    private static final long HOLD_MILLIS = 5;
+
+    @Param({"fixed", "adaptive"})
+    public String pool;
+
+    private HikariDataSource dataSource;
+    private AdaptivePoolController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDb.hikari(FIXED_POOL_SIZE);
+        if ("adaptive".equals(pool)) {
+            // 풀을 시작하기 전에 만들어야 획득 시간이 기록된다
+            controller = new AdaptivePoolController(dataSource, FIXED_POOL_SIZE, MAX_POOL_SIZE, TARGET_ACQUIRE_MILLIS);
+            controller.start(ADJUST_PERIOD_MILLIS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (controller != null) {
+            controller.close();
+        }
+        BenchmarkDb.close(dataSource);
+    }
+
+    @State(Scope.Thread)
+    public static class Borrowed {
+
+        Connection connection;
+
+        /**
+         * 스파이크 구간이 아니면 다음 스파이크까지 기다린다
+         */
+        @Setup(Level.Invocation)
+        public void awaitBurst() throws InterruptedException {
+            long offset = System.currentTimeMillis() % BURST_PERIOD_MILLIS;
+            if (offset >= BURST_MILLIS) {
+                Thread.sleep(BURST_PERIOD_MILLIS - offset);
+            }
+        }
+
+        /**
+         * 쿼리 시간 만큼 잡고 있다가 반납한다
+         */
+        @TearDown(Level.Invocation)
+        public void release() throws SQLException, InterruptedException {
+            if (connection != null) {
+                Thread.sleep(HOLD_MILLIS);
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
+    @Benchmark
+    public Connection acquire(Borrowed borrowed) throws SQLException {
+        borrowed.connection = dataSource.getConnection();
+        return borrowed.connection;
+    }
+}
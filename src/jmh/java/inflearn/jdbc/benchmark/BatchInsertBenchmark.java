@@ -0,0 +1,65 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 ROWS 명 저장 - save 반복 vs saveAll(JDBC batch)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchInsertBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final String PREFIX = "b";
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private List<Member> members;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+
+        members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member(PREFIX + i, i));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanUp() throws SQLException {
+        BenchmarkDb.deleteByPrefix(dataSource, PREFIX);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public void saveLoop() throws SQLException {
+        for (Member member : members) {
+            repository.save(member);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> saveAll() throws SQLException {
+        return repository.saveAll(members, batchSize);
+    }
+}
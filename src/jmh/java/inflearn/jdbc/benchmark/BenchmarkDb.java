@@ -0,0 +1,87 @@
+package inflearn.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 벤치마크용 in-memory H2
+ * JMH 는 벤치마크마다 JVM 을 fork 하므로 fork 마다 새로운 DB 가 만들어진다.
+ */
+public abstract class BenchmarkDb {
+
+    public static final String URL = "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static final String MEMBER_DDL =
+            "create table if not exists member (member_id varchar(10), money integer not null default 0, version bigint not null default 0, primary key (member_id))";
+
+    public static DataSource dataSource(String type) {
+        switch (type) {
+            case "hikari":
+                return hikari(10);
+            case "driverManager":
+                return new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+            default:
+                throw new IllegalArgumentException("unknown dataSource type=" + type);
+        }
+    }
+
+    public static HikariDataSource hikari(int maximumPoolSize) {
+        return hikari(URL, maximumPoolSize);
+    }
+
+    public static HikariDataSource hikari(String url, int maximumPoolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setPoolName("benchmarkPool");
+        return dataSource;
+    }
+
+    public static void createSchema(DataSource dataSource) throws SQLException {
+        execute(dataSource, MEMBER_DDL);
+    }
+
+    public static void deleteAll(DataSource dataSource) throws SQLException {
+        execute(dataSource, "delete from member");
+    }
+
+    public static void deleteByPrefix(DataSource dataSource, String prefix) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("delete from member where member_id like ?")) {
+            pstmt.setString(1, prefix + "%");
+            pstmt.executeUpdate();
+        }
+    }
+
+    public static void insert(DataSource dataSource, String memberId, int money) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("merge into member(member_id, money) key(member_id) values (?, ?)")) {
+            pstmt.setString(1, memberId);
+            pstmt.setInt(2, money);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public static void close(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package inflearn.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.service.GroupCommitTransferService;
+import inflearn.jdbc.service.MemberServiceV3_3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 이체마다 커밋 vs 그룹 커밋, 16 쓰레드 동시 이체
+ *
+ * 커밋 비용(로그 쓰기) 이 있어야 차이가 보이므로 in-memory 가 아닌 파일 DB(build/jmh-groupcommit) 를 사용한다.
+ * 쓰레드마다 다른 회원 쌍으로 이체해서 행 잠금 경합은 빼고 커밋 비용만 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class GroupCommitBenchmark {
+
+    private static final String FILE_URL = "jdbc:h2:./build/jmh-groupcommit";
+    private static final int THREADS = 16;
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"1", "5"})
+    public long maxWaitMillis;
+
+    private HikariDataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV3_3 memberService;
+    private GroupCommitTransferService groupCommitService;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(FILE_URL, THREADS);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        for (int i = 0; i < THREADS; i++) {
+            BenchmarkDb.insert(dataSource, "gcA" + i, INITIAL_MONEY);
+            BenchmarkDb.insert(dataSource, "gcB" + i, INITIAL_MONEY);
+        }
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+        // 프록시 없이 TransactionTemplate 으로 트랜잭션을 연다. (@Transactional 프록시 비용은 ServiceBenchmark 참고)
+        txTemplate = new TransactionTemplate(transactionManager);
+        memberService = new MemberServiceV3_3(repository);
+        groupCommitService = new GroupCommitTransferService(repository, transactionManager, 64, maxWaitMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        groupCommitService.close();
+        BenchmarkDb.close(dataSource);
+    }
+
+    @State(Scope.Thread)
+    public static class Pair {
+        String fromId;
+        String toId;
+
+        @Setup(Level.Trial)
+        public void setUp(GroupCommitBenchmark benchmark) {
+            int index = benchmark.threadSequence.getAndIncrement() % THREADS;
+            fromId = "gcA" + index;
+            toId = "gcB" + index;
+        }
+    }
+
+    @Benchmark
+    public void commitPerTransfer(Pair pair) {
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                memberService.accountTransferAtomic(pair.fromId, pair.toId, 1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void groupCommit(Pair pair) {
+        groupCommitService.accountTransfer(pair.fromId, pair.toId, 1).join();
+    }
+}
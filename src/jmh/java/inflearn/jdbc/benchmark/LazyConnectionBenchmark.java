@@ -0,0 +1,86 @@
+package inflearn.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.connection.LazyConnectionConfig;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 풀 크기 2, 16 쓰레드, 요청의 절반은 DB 에 가기 전에 검증(VALIDATION_MILLIS) 에서 실패
+ * 트랜잭션을 시작할 때 커넥션을 빌리는 eager 와 첫 SQL 에서 빌리는 lazy(LazyConnectionDataSourceProxy) 의 처리량 비교
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class LazyConnectionBenchmark {
+
+    private static final int POOL_SIZE = 2;
+    private static final long VALIDATION_MILLIS = 5;
+    private static final String MEMBER_ID = "lazy";
+
+    @Param({"eager", "lazy"})
+    public String connectionMode;
+
+    private HikariDataSource hikari;
+    private MemberRepositoryV3 repository;
+    private TransactionTemplate txTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        hikari = BenchmarkDb.hikari(POOL_SIZE);
+        BenchmarkDb.createSchema(hikari);
+        BenchmarkDb.insert(hikari, MEMBER_ID, 0);
+        DataSource dataSource = "lazy".equals(connectionMode) ? LazyConnectionConfig.lazy(hikari) : hikari;
+        repository = new MemberRepositoryV3(dataSource);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(hikari);
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+        long sequence;
+    }
+
+    /**
+     * 짝수번째 요청은 입금, 홀수번째 요청은 검증에서 실패한다
+     */
+    @Benchmark
+    public boolean request(Requests requests) {
+        boolean valid = requests.sequence++ % 2 == 0;
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                if (!valid) {
+                    validationFails();
+                }
+                try {
+                    repository.deposit(MEMBER_ID, 1);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void validationFails() {
+        try {
+            Thread.sleep(VALIDATION_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IllegalArgumentException("검증 실패");
+    }
+}
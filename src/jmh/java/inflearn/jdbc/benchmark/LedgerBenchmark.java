@@ -0,0 +1,94 @@
+package inflearn.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.ledger.InMemoryLedger;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.service.MemberServiceV3_3;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JDBC 이체(MemberServiceV3_3.accountTransfer) vs 메모리 원장(InMemoryLedger.transfer), 8 쓰레드 동시 이체
+ * 쓰레드마다 다른 회원 쌍으로 이체한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class LedgerBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    private HikariDataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV3_3 memberService;
+    private InMemoryLedger ledger;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        dataSource = BenchmarkDb.hikari(THREADS);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        for (int i = 0; i < THREADS; i++) {
+            BenchmarkDb.insert(dataSource, "lgA" + i, INITIAL_MONEY);
+            BenchmarkDb.insert(dataSource, "lgB" + i, INITIAL_MONEY);
+        }
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+        // 프록시 없이 TransactionTemplate 으로 트랜잭션을 연다. (@Transactional 프록시 비용은 ServiceBenchmark 참고)
+        txTemplate = new TransactionTemplate(transactionManager);
+        memberService = new MemberServiceV3_3(repository);
+
+        // 벤치마크 메서드마다 따로 fork 하므로 원장과 JDBC 이체가 같은 회원을 동시에 바꾸지 않는다
+        Path journalDirectory = Files.createTempDirectory("ledger-bench");
+        ledger = new InMemoryLedger(repository, transactionManager, journalDirectory, THREADS * 2, 100);
+        ledger.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ledger.close();
+        BenchmarkDb.close(dataSource);
+    }
+
+    @State(Scope.Thread)
+    public static class Pair {
+        String fromId;
+        String toId;
+
+        @Setup(Level.Trial)
+        public void setUp(LedgerBenchmark benchmark) {
+            int index = benchmark.threadSequence.getAndIncrement() % THREADS;
+            fromId = "lgA" + index;
+            toId = "lgB" + index;
+        }
+    }
+
+    @Benchmark
+    public void jdbcTransfer(Pair pair) {
+        txTemplate.executeWithoutResult(status -> {
+            try {
+                memberService.accountTransfer(pair.fromId, pair.toId, 1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void ledgerTransfer(Pair pair) {
+        ledger.transfer(pair.fromId, pair.toId, 1);
+    }
+}
@@ -0,0 +1,86 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.cache.MemberCache;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.CachedMemberRepositoryV3;
+import inflearn.jdbc.repository.MemberRepository;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.repository.MemoryMemberRepository;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MemberRepository 구현별 findById, update, withdraw + deposit 비용
+ * jdbc: MemberRepositoryV3, cached: CachedMemberRepositoryV3, memory: MemoryMemberRepository
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemberRepositoryBackendBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"jdbc", "cached", "memory"})
+    public String backend;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private final AtomicInteger money = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        switch (backend) {
+            case "jdbc":
+                dataSource = BenchmarkDb.hikari(10);
+                repository = new MemberRepositoryV3(dataSource);
+                break;
+            case "cached":
+                dataSource = BenchmarkDb.hikari(10);
+                repository = new CachedMemberRepositoryV3(dataSource, new MemberCache(1000, Duration.ofMinutes(10)));
+                break;
+            case "memory":
+                repository = new MemoryMemberRepository();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown backend=" + backend);
+        }
+        if (dataSource != null) {
+            BenchmarkDb.createSchema(dataSource);
+            BenchmarkDb.deleteAll(dataSource);
+        }
+        repository.save(new Member(MEMBER_A, INITIAL_MONEY));
+        repository.save(new Member(MEMBER_B, INITIAL_MONEY));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            BenchmarkDb.close(dataSource);
+        }
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(MEMBER_A);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(MEMBER_B, money.incrementAndGet());
+    }
+
+    /**
+     * 트랜잭션 없이 withdraw + deposit (저장소 자체 비용만)
+     */
+    @Benchmark
+    public int withdrawAndDeposit() throws SQLException {
+        return repository.withdraw(MEMBER_A, 1) + repository.deposit(MEMBER_A, 1);
+    }
+}
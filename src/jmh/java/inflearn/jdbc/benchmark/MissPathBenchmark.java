@@ -0,0 +1,97 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepository;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.repository.MemoryMemberRepository;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 없는 회원 조회 비용
+ * stackTrace: 이전 findById 처럼 stack trace + 메시지를 만드는 NoSuchElementException
+ * findById: MemberNotFoundException (stack trace 없음), findOptional, exists
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MissPathBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+    private static final String MISSING = "missing";
+
+    @Param({"jdbc", "memory"})
+    public String backend;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        switch (backend) {
+            case "jdbc":
+                dataSource = BenchmarkDb.hikari(10);
+                BenchmarkDb.createSchema(dataSource);
+                BenchmarkDb.deleteAll(dataSource);
+                repository = new MemberRepositoryV3(dataSource);
+                break;
+            case "memory":
+                repository = new MemoryMemberRepository();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown backend=" + backend);
+        }
+        repository.save(new Member(MEMBER_A, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            BenchmarkDb.close(dataSource);
+        }
+    }
+
+    @Benchmark
+    public Object stackTrace() throws SQLException {
+        try {
+            Member member = repository.findOptional(MISSING).orElse(null);
+            if (member == null) {
+                throw new NoSuchElementException("member not found memberId=" + MISSING);
+            }
+            return member;
+        } catch (NoSuchElementException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findById() throws SQLException {
+        try {
+            return repository.findById(MISSING);
+        } catch (NoSuchElementException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findOptional() throws SQLException {
+        return repository.findOptional(MISSING);
+    }
+
+    @Benchmark
+    public boolean exists() throws SQLException {
+        return repository.exists(MISSING);
+    }
+
+    /**
+     * 있는 회원 조회 - 기준
+     */
+    @Benchmark
+    public Member hit() throws SQLException {
+        return repository.findById(MEMBER_A);
+    }
+}
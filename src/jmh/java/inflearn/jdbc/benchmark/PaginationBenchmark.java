@@ -0,0 +1,106 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.domain.MemberPage;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.repository.MemberRowMapper;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 페이지 조회 - keyset(findPage) vs offset
+ * 첫 페이지, 가운데, 마지막 페이지에서 비교한다. keyset 은 위치와 상관없이 일정해야 한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PaginationBenchmark {
+
+    private static final int LIMIT = 50;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"first", "middle", "last"})
+    public String position;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private String cursor;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+
+        List<Member> chunk = new ArrayList<>(MemberRepositoryV3.DEFAULT_BATCH_SIZE);
+        for (int i = 0; i < rows; i++) {
+            chunk.add(new Member(memberId(i), i));
+            if (chunk.size() == MemberRepositoryV3.DEFAULT_BATCH_SIZE) {
+                repository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        repository.saveAll(chunk);
+
+        switch (position) {
+            case "first":
+                offset = 0;
+                cursor = null;
+                break;
+            case "middle":
+                offset = rows / 2;
+                cursor = memberId(offset - 1);
+                break;
+            case "last":
+                offset = rows - LIMIT;
+                cursor = memberId(offset - 1);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown position=" + position);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public MemberPage keyset() throws SQLException {
+        return repository.findPage(cursor, LIMIT);
+    }
+
+    @Benchmark
+    public List<Member> offset() throws SQLException {
+        String sql = "select " + MemberRowMapper.COLUMNS + " from member order by member_id limit ? offset ?";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql)) {
+            pstmt.setInt(1, LIMIT);
+            pstmt.setInt(2, offset);
+            List<Member> members = new ArrayList<>(LIMIT);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                MemberRowMapper rowMapper = MemberRowMapper.COLUMNS_MAPPER;
+                while (rs.next()) {
+                    members.add(rowMapper.mapRow(rs));
+                }
+            }
+            return members;
+        }
+    }
+
+    private static String memberId(int i) {
+        return String.format("m%09d", i);
+    }
+}
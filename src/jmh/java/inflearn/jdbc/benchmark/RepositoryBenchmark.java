@@ -0,0 +1,113 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV1;
+import inflearn.jdbc.repository.MemberRepositoryV2;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 리포지토리 V1 ~ V3 의 save, findById, update 비용
+ * dataSourceType 으로 커넥션 풀(hikari) 과 매번 새 커넥션(driverManager) 을 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RepositoryBenchmark {
+
+    private static final String HOT_MEMBER = "hot";
+    private static final String SAVE_PREFIX = "s";
+
+    @Param({"hikari", "driverManager"})
+    public String dataSourceType;
+
+    private DataSource dataSource;
+    private MemberRepositoryV1 repositoryV1;
+    private MemberRepositoryV2 repositoryV2;
+    private MemberRepositoryV3 repositoryV3;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicInteger money = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.dataSource(dataSourceType);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        BenchmarkDb.insert(dataSource, HOT_MEMBER, 10000);
+
+        repositoryV1 = new MemberRepositoryV1(dataSource);
+        repositoryV2 = new MemberRepositoryV2(dataSource);
+        repositoryV3 = new MemberRepositoryV3(dataSource);
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws SQLException {
+        BenchmarkDb.deleteByPrefix(dataSource, SAVE_PREFIX);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public Member v1_save() throws SQLException {
+        return repositoryV1.save(newMember());
+    }
+
+    @Benchmark
+    public Member v1_findById() throws SQLException {
+        return repositoryV1.findById(HOT_MEMBER);
+    }
+
+    @Benchmark
+    public void v1_update() throws SQLException {
+        repositoryV1.update(HOT_MEMBER, money.incrementAndGet());
+    }
+
+    @Benchmark
+    public Member v2_save() throws SQLException {
+        return repositoryV2.save(newMember());
+    }
+
+    @Benchmark
+    public Member v2_findById() throws SQLException {
+        return repositoryV2.findById(HOT_MEMBER);
+    }
+
+    /**
+     * V2 의 update 는 커넥션을 파라미터로 받으므로 커넥션 획득 비용까지 포함해서 잰다.
+     */
+    @Benchmark
+    public void v2_update() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            repositoryV2.update(con, HOT_MEMBER, money.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public Member v3_save() throws SQLException {
+        return repositoryV3.save(newMember());
+    }
+
+    @Benchmark
+    public Member v3_findById() throws SQLException {
+        return repositoryV3.findById(HOT_MEMBER);
+    }
+
+    @Benchmark
+    public void v3_update() throws SQLException {
+        repositoryV3.update(HOT_MEMBER, money.incrementAndGet());
+    }
+
+    private Member newMember() {
+        return new Member(SAVE_PREFIX + sequence.incrementAndGet(), 10000);
+    }
+}
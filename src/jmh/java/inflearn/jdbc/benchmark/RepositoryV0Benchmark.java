@@ -0,0 +1,69 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.connection.DBConnectionUtil;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV0;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static inflearn.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 리포지토리 V0 - DBConnectionUtil 의 DriverManager 모드(매번 새 커넥션) vs 풀 모드
+ * V0 는 ConnectionConst.URL 에 고정되어 있어서 in-memory DB 가 아닌 ~/test 를 사용한다.
+ * (H2 서버가 같은 파일을 열고 있으면 실행 전에 종료해야 한다)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RepositoryV0Benchmark {
+
+    private static final String SAVE_PREFIX = "v0";
+
+    @Param({"driverManager", "pool"})
+    public String connectionMode;
+
+    private final MemberRepositoryV0 repositoryV0 = new MemberRepositoryV0();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private DataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteByPrefix(dataSource, SAVE_PREFIX);
+
+        if ("pool".equals(connectionMode)) {
+            DBConnectionUtil.usePool(10);
+        } else {
+            DBConnectionUtil.useDriverManager();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DBConnectionUtil.useDriverManager();
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws SQLException {
+        BenchmarkDb.deleteByPrefix(dataSource, SAVE_PREFIX);
+    }
+
+    @Benchmark
+    public void getConnection() throws SQLException {
+        Connection connection = DBConnectionUtil.getConnection();
+        connection.close();
+    }
+
+    @Benchmark
+    public Member v0_save() throws SQLException {
+        return repositoryV0.save(new Member(SAVE_PREFIX + sequence.incrementAndGet(), 10000));
+    }
+}
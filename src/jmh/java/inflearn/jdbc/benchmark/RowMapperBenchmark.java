@@ -0,0 +1,94 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.repository.MemberRowMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 전체 회원 ROWS 명 스캔 - select * + 컬럼 이름으로 읽기 vs 필요한 컬럼 + index 로 읽기(MemberRowMapper)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RowMapperBenchmark {
+
+    private static final int ROWS = 100_000;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+
+        List<Member> chunk = new ArrayList<>(MemberRepositoryV3.DEFAULT_BATCH_SIZE);
+        for (int i = 0; i < ROWS; i++) {
+            chunk.add(new Member(String.format("r%09d", i), i));
+            if (chunk.size() == MemberRepositoryV3.DEFAULT_BATCH_SIZE) {
+                repository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        repository.saveAll(chunk);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        BenchmarkDb.deleteAll(dataSource);
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public void byColumnName(Blackhole blackhole) throws SQLException {
+        String sql = "select * from member";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                blackhole.consume(member);
+            }
+        }
+    }
+
+    @Benchmark
+    public void byColumnIndex(Blackhole blackhole) throws SQLException {
+        String sql = "select " + MemberRowMapper.COLUMNS + " from member";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            MemberRowMapper rowMapper = MemberRowMapper.COLUMNS_MAPPER;
+            while (rs.next()) {
+                blackhole.consume(rowMapper.mapRow(rs));
+            }
+        }
+    }
+
+    /**
+     * 리포지토리 경로 (forward-only 커서 + MemberRowMapper)
+     */
+    @Benchmark
+    public void streamAll(Blackhole blackhole) throws SQLException {
+        try (Stream<Member> members = repository.streamAll()) {
+            members.forEach(blackhole::consume);
+        }
+    }
+}
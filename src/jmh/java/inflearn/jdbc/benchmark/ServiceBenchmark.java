@@ -0,0 +1,100 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.repository.MemberRepositoryV1;
+import inflearn.jdbc.repository.MemberRepositoryV2;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import inflearn.jdbc.service.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 서비스 V1 ~ V3_3 의 accountTransfer 비용
+ * V1: 트랜잭션 없음, V2: 커넥션 파라미터 전달, V3_1: 트랜잭션 매니저, V3_2: 트랜잭션 템플릿, V3_3: @Transactional 프록시
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ServiceBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    private DataSource dataSource;
+    private AnnotationConfigApplicationContext context;
+
+    private MemberServiceV1 serviceV1;
+    private MemberServiceV2 serviceV2;
+    private MemberServiceV3_1 serviceV3_1;
+    private MemberServiceV3_2 serviceV3_2;
+    private MemberServiceV3_3 serviceV3_3;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        BenchmarkDb.insert(dataSource, MEMBER_A, INITIAL_MONEY);
+        BenchmarkDb.insert(dataSource, MEMBER_B, INITIAL_MONEY);
+
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        MemberRepositoryV3 repositoryV3 = new MemberRepositoryV3(dataSource);
+
+        serviceV1 = new MemberServiceV1(new MemberRepositoryV1(dataSource));
+        serviceV2 = new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource));
+        serviceV3_1 = new MemberServiceV3_1(transactionManager, repositoryV3);
+        serviceV3_2 = new MemberServiceV3_2(transactionManager, repositoryV3);
+
+        // @Transactional 은 스프링 AOP 프록시가 있어야 동작하므로 컨테이너를 띄운다
+        context = new AnnotationConfigApplicationContext();
+        context.register(TxConfig.class);
+        context.registerBean(PlatformTransactionManager.class, () -> transactionManager);
+        context.registerBean(MemberServiceV3_3.class, () -> new MemberServiceV3_3(repositoryV3));
+        context.refresh();
+        serviceV3_3 = context.getBean(MemberServiceV3_3.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public void v1_accountTransfer() throws SQLException {
+        serviceV1.accountTransfer(MEMBER_A, MEMBER_B, 1);
+    }
+
+    @Benchmark
+    public void v2_accountTransfer() throws SQLException {
+        serviceV2.accountTransfer(MEMBER_A, MEMBER_B, 1);
+    }
+
+    @Benchmark
+    public void v3_1_accountTransfer() throws SQLException {
+        serviceV3_1.accountTransfer(MEMBER_A, MEMBER_B, 1);
+    }
+
+    @Benchmark
+    public void v3_2_accountTransfer() throws SQLException {
+        serviceV3_2.accountTransfer(MEMBER_A, MEMBER_B, 1);
+    }
+
+    @Benchmark
+    public void v3_3_accountTransfer() throws SQLException {
+        serviceV3_3.accountTransfer(MEMBER_A, MEMBER_B, 1);
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class TxConfig {
+    }
+}
@@ -0,0 +1,62 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.connection.StatementCache;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.metrics.RepositoryMetrics;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemberRepositoryV3 CRUD - 매번 prepareStatement vs 커넥션별 PreparedStatement 캐시
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StatementCacheBenchmark {
+
+    private static final String MEMBER_ID = "sc";
+
+    @Param({"noCache", "cache"})
+    public String statementMode;
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        StatementCache statementCache = "cache".equals(statementMode) ? new StatementCache(16) : null;
+        repository = new MemberRepositoryV3(dataSource, new RepositoryMetrics("bench"), statementCache);
+        BenchmarkDb.insert(dataSource, MEMBER_ID, 10000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(MEMBER_ID, 10000);
+    }
+
+    /**
+     * insert + delete 한 쌍
+     */
+    @Benchmark
+    public void saveAndDelete() throws SQLException {
+        repository.save(new Member("sc_tmp", 0));
+        repository.delete("sc_tmp");
+    }
+}
@@ -0,0 +1,38 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.journal.TransferJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 이체 저널 append 비용 - fsync 정책별
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferJournalBenchmark {
+
+    @Param({"ALWAYS", "BATCH", "NEVER"})
+    public TransferJournal.FsyncPolicy policy;
+
+    private TransferJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journal = new TransferJournal(Files.createTempDirectory("transfer-journal-bench"),
+                TransferJournal.DEFAULT_RECORDS_PER_SEGMENT, policy, 256, 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        journal.close();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return journal.append("memberA", "memberB", 1);
+    }
+}
@@ -0,0 +1,75 @@
+package inflearn.jdbc.benchmark;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 ROWS 명 동기화 (절반은 이미 있음)
+ * findById -> NoSuchElementException 이면 save, 있으면 update  vs  upsertAll(merge batch)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UpsertBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final String PREFIX = "u";
+
+    private DataSource dataSource;
+    private MemberRepositoryV3 repository;
+    private List<Member> existing;
+    private List<Member> members;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDb.hikari(10);
+        BenchmarkDb.createSchema(dataSource);
+        BenchmarkDb.deleteAll(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+
+        existing = new ArrayList<>(ROWS / 2);
+        members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member(PREFIX + i, i + 1));
+            if (i % 2 == 0) {
+                existing.add(new Member(PREFIX + i, i));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws SQLException {
+        BenchmarkDb.deleteByPrefix(dataSource, PREFIX);
+        repository.saveAll(existing);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDb.close(dataSource);
+    }
+
+    @Benchmark
+    public void selectThenSaveOrUpdate() throws SQLException {
+        for (Member member : members) {
+            try {
+                repository.findById(member.getMemberId());
+                repository.update(member.getMemberId(), member.getMoney());
+            } catch (NoSuchElementException e) {
+                repository.save(member);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Integer> upsertAll() throws SQLException {
+        return repository.upsertAll(members);
+    }
+}
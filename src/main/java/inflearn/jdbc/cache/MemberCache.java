@@ -0,0 +1,127 @@
+package inflearn.jdbc.cache;
+
+import inflearn.jdbc.domain.Member;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 회원 캐시 - 최대 크기(LRU) + TTL
+ *
+ * 조회 결과를 넣을 때는 조회 시작 전에 받아둔 stamp 를 같이 넘긴다.
+ * 그 사이에 invalidate 가 한번이라도 있었으면 put 을 버린다. (DB 에서 읽은 값이 이미 오래된 값일 수 있기 때문)
+ */
+public class MemberCache {
+
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long stamp;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public MemberCache(int maximumSize, Duration ttl) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, maximumSize=" + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+        // accessOrder = true -> get 할 때마다 맨 뒤로 이동, 가장 오래 안 쓴 entry 가 맨 앞 (LRU)
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MemberCache.this.maximumSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return 캐시된 회원의 복사본, 없거나 만료되었으면 null
+     */
+    public Member get(String memberId) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(memberId);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                entries.remove(memberId);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return copy(entry.member);
+    }
+
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+     * stamp 이후에 invalidate 가 없었을 때만 넣는다.
+     */
+    public synchronized boolean put(String memberId, Member member, long stamp) {
+        if (this.stamp != stamp) {
+            return false;
+        }
+        entries.put(memberId, new Entry(copy(member), System.nanoTime() + ttlNanos));
+        return true;
+    }
+
+    public synchronized void invalidate(String memberId) {
+        stamp++;
+        entries.remove(memberId);
+    }
+
+    public synchronized void invalidateAll() {
+        stamp++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private static Member copy(Member member) {
+        Member copy = new Member(member.getMemberId(), member.getMoney());
+        copy.setVersion(member.getVersion());
+        return copy;
+    }
+
+    private static final class Entry {
+        private final Member member;
+        private final long expiresAt;
+
+        private Entry(Member member, long expiresAt) {
+            this.member = member;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
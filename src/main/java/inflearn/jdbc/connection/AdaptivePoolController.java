@@ -0,0 +1,186 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import inflearn.jdbc.metrics.Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HikariCP 풀 크기를 부하에 맞춰 조절하는 컨트롤러
+ *
+ * 주기적으로 HikariPoolMXBean 의 active / idle / 대기 스레드 수와 커넥션 획득 시간(p99) 을 보고
+ * maximumPoolSize, minimumIdle 을 [minPoolSize, maxPoolSize] 안에서 바꾼다.
+ * - 늘리기: 커넥션을 기다리는 스레드가 있거나, 획득 p99 가 목표보다 크거나, 타임아웃이 났을 때. 기다리는 스레드 수 만큼만 늘린다.
+ * - 줄이기: 사용률이 절반 이하인 상태가 shrinkAfterTicks 번 연속될 때 한개씩 줄인다. (스파이크 사이에 바로 줄였다 다시 늘리는 것 방지)
+ *   설정만 줄이고 커넥션은 닫지 않는다. 남는 커넥션은 Hikari housekeeper 가 idleTimeout 이 지난 유휴 커넥션부터 minimumIdle 까지 닫는다.
+ *   (housekeeper 는 minimumIdle < maximumPoolSize 일 때만 닫으므로 minPoolSize 보다 클 때는 minimumIdle 을 maximumPoolSize 보다 작게 둔다.
+ *   minimumIdle 은 minPoolSize 아래로 내리지 않으므로 minPoolSize 까지 줄어든 뒤에는 housekeeper 가 닫지 않고, 남은 커넥션은 maxLifetime 에 정리된다)
+ *
+ * 획득 시간은 Hikari 의 MetricsTrackerFactory 로 받는다. 풀을 시작하기 전에 생성해야 기록이 빠지지 않는다.
+ */
+@Slf4j
+public class AdaptivePoolController implements MetricsTrackerFactory, AutoCloseable {
+
+    private static final int DEFAULT_SHRINK_AFTER_TICKS = 5;
+
+    private final HikariDataSource dataSource;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long targetAcquireNanos;
+    private final int shrinkAfterTicks;
+
+    // 한 주기 동안의 획득 시간, 매 adjust 마다 비운다
+    private final Histogram acquireNanos = new Histogram();
+    private final LongAdder timeouts = new LongAdder();
+    private int underUsedTicks;
+
+    private ScheduledExecutorService scheduler;
+
+    public AdaptivePoolController(HikariDataSource dataSource, int minPoolSize, int maxPoolSize, long targetAcquireMillis) {
+        this(dataSource, minPoolSize, maxPoolSize, targetAcquireMillis, DEFAULT_SHRINK_AFTER_TICKS);
+    }
+
+    public AdaptivePoolController(HikariDataSource dataSource, int minPoolSize, int maxPoolSize,
+                                  long targetAcquireMillis, int shrinkAfterTicks) {
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException("invalid bounds, minPoolSize=" + minPoolSize + ", maxPoolSize=" + maxPoolSize);
+        }
+        this.dataSource = dataSource;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.targetAcquireNanos = TimeUnit.MILLISECONDS.toNanos(targetAcquireMillis);
+        this.shrinkAfterTicks = shrinkAfterTicks;
+
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        int initial = Math.min(Math.max(config.getMaximumPoolSize(), minPoolSize), maxPoolSize);
+        config.setMaximumPoolSize(initial);
+        config.setMinimumIdle(minimumIdleFor(initial));
+        dataSource.setMetricsTrackerFactory(this);
+    }
+
+    /**
+     * periodMillis 마다 adjust() 를 호출한다.
+     */
+    public synchronized void start(long periodMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, dataSource.getPoolName() + " pool controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjustSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 현재 통계로 풀 크기를 한번 조절한다.
+     * @return 조절 후 maximumPoolSize
+     */
+    public synchronized int adjust() {
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        int current = config.getMaximumPoolSize();
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return current;
+        }
+
+        int active = pool.getActiveConnections();
+        int waiting = pool.getThreadsAwaitingConnection();
+        long acquireP99 = acquireNanos.getP99();
+        long timeoutCount = timeouts.sumThenReset();
+        acquireNanos.reset();
+
+        int target = current;
+        if (waiting > 0 || acquireP99 > targetAcquireNanos || timeoutCount > 0) {
+            underUsedTicks = 0;
+            target = Math.min(maxPoolSize, current + Math.max(1, waiting));
+        } else if (active * 2 <= current) {
+            if (++underUsedTicks >= shrinkAfterTicks) {
+                underUsedTicks = 0;
+                target = Math.max(minPoolSize, current - 1);
+            }
+        } else {
+            underUsedTicks = 0;
+        }
+
+        if (target != current) {
+            resize(config, current, target);
+            log.debug("pool resized {} -> {} (active={}, waiting={}, acquireP99={}ns, timeouts={})",
+                    current, target, active, waiting, acquireP99, timeoutCount);
+        }
+        return target;
+    }
+
+    public int getMaximumPoolSize() {
+        return dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+    }
+
+    public int getMinimumIdle() {
+        return dataSource.getHikariConfigMXBean().getMinimumIdle();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireNanos.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    private void resize(HikariConfigMXBean config, int current, int target) {
+        int minimumIdle = minimumIdleFor(target);
+        if (target > current) {
+            config.setMaximumPoolSize(target);
+            config.setMinimumIdle(minimumIdle);
+            return;
+        }
+        // 사용중인 커넥션까지 모두 교체하는 softEvictConnections 는 쓰지 않는다. (줄일 때마다 재연결이 몰린다)
+        config.setMinimumIdle(minimumIdle);
+        config.setMaximumPoolSize(target);
+    }
+
+    /**
+     * minimumIdle 은 늘린 크기의 절반까지만 따라간다. 스파이크 때 만든 커넥션을 전부 붙잡고 있지 않도록
+     * maximumPoolSize 보다 작아야 housekeeper 가 남는 유휴 커넥션을 닫는다. 단 minPoolSize 아래로는 내리지 않는다.
+     */
+    private int minimumIdleFor(int maximumPoolSize) {
+        int minimumIdle = Math.max(minPoolSize, maximumPoolSize / 2);
+        if (minimumIdle >= maximumPoolSize) {
+            minimumIdle = Math.max(minPoolSize, maximumPoolSize - 1);
+        }
+        return Math.min(minimumIdle, maximumPoolSize);
+    }
+
+    private void adjustSafely() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            log.info("pool adjust failed", e);
+        }
+    }
+}
@@ -3,7 +3,8 @@ package inflearn.jdbc.connection;
 public abstract class ConnectionConst {
 //    public static final String URL = "jdbc:h2:tcp://localhost/~/test";
     public static final String URL = "jdbc:h2:~/test";
-// create table member (member_id varchar(10), money integer not null default 0, primary key (member_id));
+// create table member (member_id varchar(10), money integer not null default 0, version bigint not null default 0, primary key (member_id));
+// 기존 테이블: alter table member add column version bigint not null default 0;
 
     public static final String USERNAME = "sa";
     public static final String PASSWORD = "";
@@ -0,0 +1,112 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 시작할 때 커넥션 풀 미리 채우기
+ *
+ * Hikari 는 커넥션을 백그라운드 스레드(connection adder) 에서 채우기 때문에, 배포 직후 첫 요청들이 커넥션 생성 비용을 낸다.
+ * 여기서는 커넥션 connections 개를 동시에 빌려서 실제로 만들어 두고, StatementCache 가 있으면 각 커넥션에서 자주 쓰는 SQL 을
+ * 캐시에 prepare 해둔다. (리포지토리가 같은 StatementCache 를 쓰면 첫 요청부터 캐시를 탄다)
+ *
+ * ApplicationRunner 는 ReadinessState.ACCEPTING_TRAFFIC 이 발행되기 전에 실행되므로, 이 작업이 끝날 때까지 readiness 가 열리지 않는다.
+ * jdbc.warmup.connections 가 없으면 빈을 만들지 않는다. 풀이 아닌 DataSource(DriverManagerDataSource 등) 는 미리 만들 커넥션이 없으므로 건너뛴다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jdbc.warmup.connections")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ConnectionPoolWarmer implements ApplicationRunner {
+
+    private final DataSource dataSource;
+    private final int connections;
+    // null 이면 커넥션만 만든다
+    private final StatementCache statementCache;
+    private final List<String> statements;
+
+    @Autowired
+    public ConnectionPoolWarmer(DataSource dataSource, @Value("${jdbc.warmup.connections}") int connections,
+                                ObjectProvider<StatementCache> statementCache) {
+        this(dataSource, connections, statementCache.getIfAvailable(), MemberRepositoryV3.HOT_STATEMENTS);
+    }
+
+    public ConnectionPoolWarmer(DataSource dataSource, int connections, StatementCache statementCache, List<String> statements) {
+        this.dataSource = dataSource;
+        this.connections = connections;
+        this.statementCache = statementCache;
+        this.statements = statements;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (connections <= 0) {
+            return;
+        }
+        try {
+            warmUp();
+        } catch (SQLException e) {
+            // 실패해도 풀은 요청이 올 때 커넥션을 만든다. 기동 자체를 막지는 않는다
+            log.warn("connection pool warm-up failed", e);
+        }
+    }
+
+    /**
+     * @return 실제로 준비한 커넥션 수
+     */
+    public int warmUp() throws SQLException {
+        // 풀 크기보다 많이 빌리면 connectionTimeout 까지 막힌다. (LazyConnectionDataSourceProxy 등으로 감싸져 있어도 찾는다)
+        if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+            log.info("connection pool warm-up skipped, not a pool, dataSource={}", dataSource.getClass().getSimpleName());
+            return 0;
+        }
+        int target = Math.min(connections, dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize());
+        long start = System.nanoTime();
+        // 반환하지 않고 모두 들고 있어야 풀이 서로 다른 물리 커넥션을 target 개 만든다
+        List<Connection> borrowed = new ArrayList<>(target);
+        try {
+            for (int i = 0; i < target; i++) {
+                Connection con = dataSource.getConnection();
+                borrowed.add(con);
+                prepare(con);
+            }
+        } finally {
+            borrowed.forEach(JdbcUtils::closeConnection);
+        }
+        log.info("connection pool warmed up, connections={}, statements={}, elapsed={}ms",
+                target, statementCache == null ? 0 : statements.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return target;
+    }
+
+    /**
+     * 캐시에 넣고 반납한다. 캐시 없이 prepare 하고 닫으면 남는 것이 없다.
+     */
+    private void prepare(Connection con) throws SQLException {
+        if (statementCache == null) {
+            return;
+        }
+        for (String sql : statements) {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, sql);
+            statementCache.release(con, pstmt);
+        }
+    }
+}
@@ -10,13 +10,49 @@ import static inflearn.jdbc.connection.ConnectionConst.*;
 
 @Slf4j
 public class DBConnectionUtil {
+
+    private static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+    private static final long DEFAULT_VALIDATION_IDLE_MILLIS = 500;
+
+    // null 이면 DriverManager 로 매번 새 커넥션
+    private static volatile SimpleConnectionPool pool;
+
     public static Connection getConnection() {
+        SimpleConnectionPool currentPool = pool;
         try {
-            Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-            log.info("get Connection={}, class={}", connection, connection.getClass());
+            Connection connection = currentPool != null
+                    ? currentPool.getConnection()
+                    : DriverManager.getConnection(URL, USERNAME, PASSWORD);
+            log.debug("get Connection={}, class={}", connection, connection.getClass());
             return connection;
         } catch (SQLException e) {
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * 커넥션 풀 모드 - 이후 getConnection() 은 풀에서 빌려주고, close() 하면 풀에 반환된다.
+     */
+    public static void usePool(int maximumPoolSize) {
+        usePool(maximumPoolSize, DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_VALIDATION_IDLE_MILLIS);
+    }
+
+    public static synchronized void usePool(int maximumPoolSize, long borrowTimeoutMillis, long validationIdleMillis) {
+        SimpleConnectionPool previous = pool;
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, maximumPoolSize, borrowTimeoutMillis, validationIdleMillis);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * DriverManager 모드로 되돌린다. 풀에 있던 커넥션은 닫는다.
+     */
+    public static synchronized void useDriverManager() {
+        SimpleConnectionPool previous = pool;
+        pool = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Locale;
+
+/**
+ * 지연 커넥션 모드 (jdbc.lazy-connection=true)
+ *
+ * DataSourceTransactionManager 는 트랜잭션을 시작할 때 커넥션을 빌리고 setAutoCommit(false) 를 호출한다.
+ * 그래서 DB 에 가기 전에 검증에서 실패하는 요청도 그동안 풀의 커넥션을 하나 붙잡고 있다.
+ * DataSource 빈을 LazyConnectionDataSourceProxy 로 감싸면 트랜잭션 매니저는 프록시 커넥션만 받고,
+ * 첫 statement 를 만들 때 실제 커넥션을 빌린다. DB 에 가지 않은 트랜잭션은 풀을 건드리지 않는다.
+ *
+ * 트랜잭션 매니저와 리포지토리가 같은(감싼) DataSource 빈을 써야 DataSourceUtils 가 같은 커넥션을 찾는다.
+ * 프록시는 기본 autoCommit, 격리 수준과 다른 설정만 실제 커넥션에 적용하므로 기본값은 풀 설정과 같아야 한다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jdbc.lazy-connection", havingValue = "true")
+public class LazyConnectionConfig {
+
+    @Bean
+    public static BeanPostProcessor lazyConnectionDataSourcePostProcessor(Environment environment) {
+        Boolean defaultAutoCommit = environment.getProperty("jdbc.lazy-connection.default-auto-commit", Boolean.class);
+        String defaultIsolation = environment.getProperty("jdbc.lazy-connection.default-transaction-isolation");
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof LazyConnectionDataSourceProxy)) {
+                    return lazy((DataSource) bean, defaultAutoCommit, defaultIsolation);
+                }
+                return bean;
+            }
+        };
+    }
+
+    public static LazyConnectionDataSourceProxy lazy(DataSource target) {
+        return lazy(target, null, null);
+    }
+
+    /**
+     * 프록시 커넥션이 실제 커넥션 없이 돌려줄 기본 autoCommit, 격리 수준을 정한다.
+     * 지정한 값(jdbc.lazy-connection.default-*) -> HikariDataSource 설정 순서로 찾고,
+     * 그래도 모르면 프록시가 만들어질 때 커넥션을 한번 빌려서 읽는다. (드라이버 기본값)
+     *
+     * @param defaultIsolation TRANSACTION_READ_COMMITTED 또는 READ_COMMITTED, null 이면 찾는다
+     */
+    public static LazyConnectionDataSourceProxy lazy(DataSource target, Boolean defaultAutoCommit, String defaultIsolation) {
+        if (target instanceof HikariDataSource) {
+            HikariDataSource hikari = (HikariDataSource) target;
+            if (defaultAutoCommit == null) {
+                defaultAutoCommit = hikari.isAutoCommit();
+            }
+            if (defaultIsolation == null) {
+                defaultIsolation = hikari.getTransactionIsolation();
+            }
+        }
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(target);
+        if (defaultAutoCommit != null) {
+            proxy.setDefaultAutoCommit(defaultAutoCommit);
+        }
+        if (defaultIsolation != null) {
+            proxy.setDefaultTransactionIsolation(isolationLevel(defaultIsolation));
+        }
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+
+    static int isolationLevel(String name) {
+        String level = name.trim().toUpperCase(Locale.ROOT);
+        if (!level.startsWith("TRANSACTION_")) {
+            level = "TRANSACTION_" + level;
+        }
+        switch (level) {
+            case "TRANSACTION_NONE":
+                return Connection.TRANSACTION_NONE;
+            case "TRANSACTION_READ_UNCOMMITTED":
+                return Connection.TRANSACTION_READ_UNCOMMITTED;
+            case "TRANSACTION_READ_COMMITTED":
+                return Connection.TRANSACTION_READ_COMMITTED;
+            case "TRANSACTION_REPEATABLE_READ":
+                return Connection.TRANSACTION_REPEATABLE_READ;
+            case "TRANSACTION_SERIALIZABLE":
+                return Connection.TRANSACTION_SERIALIZABLE;
+            default:
+                throw new IllegalArgumentException("unknown transaction isolation=" + name);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package inflearn.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DriverManager 기반 고정 크기 커넥션 풀
+ *
+ * - 최대 maximumPoolSize 개의 커넥션만 빌려줄 수 있다. 모두 사용중이면 borrowTimeout 까지 기다리고, 그래도 없으면 SQLTimeoutException
+ * - 반환된 커넥션은 lock-free 스택(Treiber stack) 에 쌓는다. 가장 최근에 반환된 커넥션부터 다시 사용한다.
+ * - validationIdle 보다 오래 쉬고 있던 커넥션은 빌려주기 전에 isValid 로 확인하고, 죽어있으면 버리고 새로 만든다.
+ * - 빌려준 커넥션은 프록시다. close() 를 호출하면 실제로 닫지 않고 풀에 반환한다.
+ *
+ * 스프링 없이 DBConnectionUtil 을 쓰는 코드(MemberRepositoryV0) 를 위한 것이다. 스프링을 쓰면 HikariCP 를 사용하면 된다.
+ */
+@Slf4j
+public class SimpleConnectionPool implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumPoolSize;
+    private final long borrowTimeoutNanos;
+    private final long validationIdleNanos;
+
+    private final Semaphore permits;
+    private final AtomicReference<IdleNode> idleHead = new AtomicReference<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private volatile boolean closed;
+
+    public SimpleConnectionPool(String url, String username, String password,
+                                int maximumPoolSize, long borrowTimeoutMillis, long validationIdleMillis) {
+        if (maximumPoolSize <= 0) {
+            throw new IllegalArgumentException("maximumPoolSize must be positive, maximumPoolSize=" + maximumPoolSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumPoolSize = maximumPoolSize;
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMillis);
+        this.permits = new Semaphore(maximumPoolSize, true);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTimeoutException("connection borrow timeout, maximumPoolSize=" + maximumPoolSize
+                        + ", timeout=" + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos) + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for connection", e);
+        }
+
+        try {
+            IdleNode node;
+            while ((node = pop()) != null) {
+                if (isUsable(node)) {
+                    return wrap(node.connection);
+                }
+                discard(node.connection);
+            }
+            Connection physical = DriverManager.getConnection(url, username, password);
+            totalConnections.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getActiveConnections() {
+        return maximumPoolSize - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        discardIdle();
+    }
+
+    private void discardIdle() {
+        IdleNode node;
+        while ((node = pop()) != null) {
+            discard(node.connection);
+        }
+    }
+
+    private boolean isUsable(IdleNode node) {
+        if (System.nanoTime() - node.idleSince < validationIdleNanos) {
+            return true;
+        }
+        try {
+            return node.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            log.info("connection validation failed", e);
+            return false;
+        }
+    }
+
+    private void release(Connection physical) {
+        try {
+            if (closed) {
+                discard(physical);
+                return;
+            }
+            try {
+                // 트랜잭션을 열어둔 채로 반환했으면 정리해서 다음 사용자에게 넘긴다
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                log.info("broken connection discarded", e);
+                discard(physical);
+                return;
+            }
+            push(new IdleNode(physical, System.nanoTime()));
+            // close() 가 스택을 비운 뒤에 push 했을 수 있다. closed 를 push 뒤에 다시 읽어서 남은 커넥션을 닫는다
+            if (closed) {
+                discardIdle();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Connection physical) {
+        totalConnections.decrementAndGet();
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            log.info("error", e);
+        }
+    }
+
+    private void push(IdleNode node) {
+        IdleNode head;
+        do {
+            head = idleHead.get();
+            node.next = head;
+        } while (!idleHead.compareAndSet(head, node));
+    }
+
+    private IdleNode pop() {
+        IdleNode head;
+        do {
+            head = idleHead.get();
+            if (head == null) {
+                return null;
+            }
+        } while (!idleHead.compareAndSet(head, head.next));
+        return head;
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledConnectionHandler(physical));
+    }
+
+    /**
+     * 반환할 때마다 새 노드를 만들기 때문에 CAS 의 ABA 문제가 생기지 않는다.
+     */
+    private static final class IdleNode {
+        private final Connection connection;
+        private final long idleSince;
+        private IdleNode next;
+
+        private IdleNode(Connection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private final class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection wrapping " + physical;
+                default:
+                    if (returned.get()) {
+                        throw new SQLException("connection is already returned to pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        }
+    }
+}
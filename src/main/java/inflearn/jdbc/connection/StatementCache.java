@@ -0,0 +1,214 @@
+package inflearn.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 물리 커넥션별 PreparedStatement LRU 캐시
+ *
+ * 같은 SQL 을 매번 prepareStatement 하지 않고, 물리 커넥션마다 최대 maxStatementsPerConnection 개를 보관했다가 다시 쓴다.
+ * - 풀 프록시(HikariProxyConnection 등) 는 반환할 때 자신이 만든 statement 를 닫으므로, unwrap 한 물리 커넥션에서 prepare 한다.
+ *   스프링 커넥션 프록시(LazyConnectionDataSourceProxy 등) 는 unwrap(Connection.class) 에 자신을 돌려주므로 먼저 대상 커넥션을 꺼낸다.
+ * - 풀이 커넥션을 폐기하면 드라이버가 statement 도 닫는다. 닫힌 커넥션의 캐시는 새 커넥션이 등록될 때 정리한다.
+ * - release 할 때 파라미터, batch, 경고, query timeout 을 지워서 이전 호출(트랜잭션) 의 상태가 다음 호출로 넘어가지 않게 한다.
+ * - 같은 SQL 이 아직 사용중이면(열린 ResultSet 등) 캐시하지 않는 새 statement 를 준다.
+ *
+ * 커넥션은 한번에 한 스레드만 사용한다는 풀의 규칙을 전제로 한다.
+ */
+@Slf4j
+public class StatementCache {
+
+    private final int maxStatementsPerConnection;
+    private final ConcurrentHashMap<Connection, ConnectionStatements> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public StatementCache(int maxStatementsPerConnection) {
+        if (maxStatementsPerConnection <= 0) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must be positive, maxStatementsPerConnection="
+                    + maxStatementsPerConnection);
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    public PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        Connection physical = physicalConnection(con);
+        ConnectionStatements statements = caches.get(physical);
+        if (statements == null) {
+            purgeClosed();
+            statements = caches.computeIfAbsent(physical, ConnectionStatements::new);
+        }
+        return statements.prepare(sql);
+    }
+
+    /**
+     * 캐시한 statement 는 다음 사용을 위해 정리만 하고, 캐시하지 않은 statement 는 닫는다.
+     */
+    public void release(Connection con, Statement stmt) {
+        if (stmt == null) {
+            return;
+        }
+        ConnectionStatements statements = null;
+        try {
+            if (con != null) {
+                statements = caches.get(physicalConnection(con));
+            }
+        } catch (SQLException e) {
+            log.debug("unwrap failed", e);
+        }
+        if (statements == null || !statements.release(stmt)) {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * 커넥션의 캐시를 비우고 statement 를 닫는다.
+     */
+    public void evict(Connection con) throws SQLException {
+        ConnectionStatements statements = caches.remove(physicalConnection(con));
+        if (statements != null) {
+            statements.closeAll();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int getCachedConnectionCount() {
+        return caches.size();
+    }
+
+    /**
+     * 스프링 프록시 -> 풀 프록시 -> 물리 커넥션 순서로 벗긴다.
+     */
+    static Connection physicalConnection(Connection con) throws SQLException {
+        Connection target = con;
+        while (target instanceof ConnectionProxy) {
+            target = ((ConnectionProxy) target).getTargetConnection();
+        }
+        return target.unwrap(Connection.class);
+    }
+
+    private void purgeClosed() {
+        for (Iterator<Map.Entry<Connection, ConnectionStatements>> it = caches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionStatements> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                it.remove();
+                evictionCount.add(entry.getValue().size());
+            }
+        }
+    }
+
+    private static boolean isClosed(Connection physical) {
+        try {
+            return physical.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private final class ConnectionStatements {
+        private final Connection physical;
+        // accessOrder = true -> 가장 오래 사용하지 않은 statement 부터 제거
+        private final LinkedHashMap<String, PreparedStatement> bySql = new LinkedHashMap<>(16, 0.75f, true);
+        private final IdentityHashMap<Statement, String> inUse = new IdentityHashMap<>();
+
+        private ConnectionStatements(Connection physical) {
+            this.physical = physical;
+        }
+
+        synchronized PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement cached = bySql.get(sql);
+            if (cached != null && !inUse.containsValue(sql)) {
+                if (!cached.isClosed()) {
+                    hitCount.increment();
+                    inUse.put(cached, sql);
+                    return cached;
+                }
+                bySql.remove(sql);
+            }
+            missCount.increment();
+            PreparedStatement pstmt = physical.prepareStatement(sql);
+            if (cached != null && inUse.containsValue(sql)) {
+                // 같은 SQL 을 동시에 두 개 쓰는 경우 - 나중 것은 캐시하지 않는다
+                return pstmt;
+            }
+            bySql.put(sql, pstmt);
+            inUse.put(pstmt, sql);
+            evictOverflow();
+            return pstmt;
+        }
+
+        synchronized boolean release(Statement stmt) {
+            String sql = inUse.remove(stmt);
+            if (sql == null) {
+                return false;
+            }
+            if (bySql.get(sql) != stmt) {
+                // 사용중에 LRU 에서 밀려난 statement
+                return false;
+            }
+            try {
+                PreparedStatement pstmt = (PreparedStatement) stmt;
+                pstmt.clearParameters();
+                pstmt.clearBatch();
+                pstmt.clearWarnings();
+                // 트랜잭션 timeout 으로 설정한 query timeout 이 다음 사용자에게 남지 않게
+                if (pstmt.getQueryTimeout() != 0) {
+                    pstmt.setQueryTimeout(0);
+                }
+                return true;
+            } catch (SQLException e) {
+                log.debug("statement reset failed, sql={}", sql, e);
+                bySql.remove(sql);
+                return false;
+            }
+        }
+
+        synchronized void closeAll() {
+            bySql.values().forEach(JdbcUtils::closeStatement);
+            bySql.clear();
+            inUse.clear();
+        }
+
+        synchronized int size() {
+            return bySql.size();
+        }
+
+        private void evictOverflow() {
+            Iterator<Map.Entry<String, PreparedStatement>> it = bySql.entrySet().iterator();
+            while (bySql.size() > maxStatementsPerConnection && it.hasNext()) {
+                Map.Entry<String, PreparedStatement> eldest = it.next();
+                it.remove();
+                evictionCount.increment();
+                // 사용중이면 release 할 때 닫힌다
+                if (!inUse.containsKey(eldest.getValue())) {
+                    JdbcUtils.closeStatement(eldest.getValue());
+                }
+            }
+        }
+    }
+}
@@ -6,12 +6,19 @@ import lombok.Data;
 public class Member {
     private String memberId;
     private int money;
+    private long version;   // 낙관적 잠금, 변경할 때마다 1 증가
 
     public Member(String memberId, int money) {
         this.memberId = memberId;
         this.money = money;
     }
 
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
+
     public Member() {
     }
 }
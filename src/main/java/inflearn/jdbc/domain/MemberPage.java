@@ -0,0 +1,23 @@
+package inflearn.jdbc.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * keyset 페이지 - 다음 페이지는 nextCursor(이번 페이지 마지막 member_id) 이후부터 조회한다.
+ */
+@Data
+public class MemberPage {
+    private final List<Member> members;
+    private final String nextCursor;    // 다음 페이지가 없으면 null
+
+    public MemberPage(List<Member> members, String nextCursor) {
+        this.members = members;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,19 @@
+package inflearn.jdbc.domain;
+
+import lombok.Data;
+
+@Data
+public class Transfer {
+    private String fromId;
+    private String toId;
+    private int money;
+
+    public Transfer(String fromId, String toId, int money) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.money = money;
+    }
+
+    public Transfer() {
+    }
+}
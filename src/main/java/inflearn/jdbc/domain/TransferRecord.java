@@ -0,0 +1,33 @@
+package inflearn.jdbc.domain;
+
+import lombok.Data;
+
+/**
+ * 이체 저널 레코드 (TransferJournal)
+ */
+@Data
+public class TransferRecord {
+    private final long txId;
+    private final long timestamp;       // epoch millis
+    private final String fromId;
+    private final String toId;
+    private final int amount;
+    // 이체 후 잔액, 기록하지 않은 이체는 null
+    private final Integer fromBalance;
+    private final Integer toBalance;
+
+    public TransferRecord(long txId, long timestamp, String fromId, String toId, int amount) {
+        this(txId, timestamp, fromId, toId, amount, null, null);
+    }
+
+    public TransferRecord(long txId, long timestamp, String fromId, String toId, int amount,
+                          Integer fromBalance, Integer toBalance) {
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.amount = amount;
+        this.fromBalance = fromBalance;
+        this.toBalance = toBalance;
+    }
+}
@@ -0,0 +1,16 @@
+package inflearn.jdbc.exception;
+
+/**
+ * 예상할 수 있는 업무 결과(회원 없음, 잔액 부족 ...) 를 알리는 예외
+ *
+ * 장애가 아니라 정상적인 결과이므로 stack trace 를 만들지 않는다. (fillInStackTrace 가 가장 비싸다)
+ * 메시지도 getMessage 를 호출할 때 만든다.
+ * 기존 호출부가 잡던 NoSuchElementException, IllegalStateException 을 그대로 상속하고, 이 인터페이스로 묶는다.
+ */
+public interface DomainException {
+
+    /**
+     * 예외 대상 회원 id
+     */
+    String getMemberId();
+}
@@ -0,0 +1,28 @@
+package inflearn.jdbc.exception;
+
+/**
+ * 잔액 부족 - stack trace 없음 (DomainException)
+ */
+public class InsufficientBalanceException extends IllegalStateException implements DomainException {
+
+    private final String memberId;
+
+    public InsufficientBalanceException(String memberId) {
+        this.memberId = memberId;
+    }
+
+    @Override
+    public String getMemberId() {
+        return memberId;
+    }
+
+    @Override
+    public String getMessage() {
+        return "잔액 부족 memberId=" + memberId;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,30 @@
+package inflearn.jdbc.exception;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 회원 없음 - stack trace 없음 (DomainException)
+ */
+public class MemberNotFoundException extends NoSuchElementException implements DomainException {
+
+    private final String memberId;
+
+    public MemberNotFoundException(String memberId) {
+        this.memberId = memberId;
+    }
+
+    @Override
+    public String getMemberId() {
+        return memberId;
+    }
+
+    @Override
+    public String getMessage() {
+        return "member not found memberId=" + memberId;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
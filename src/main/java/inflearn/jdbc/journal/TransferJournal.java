@@ -0,0 +1,498 @@
+package inflearn.jdbc.journal;
+
+import inflearn.jdbc.domain.TransferRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 이체 저널 - 이체 한건을 고정 크기(128 byte) 바이너리 레코드로 memory-mapped 파일에 append 한다.
+ *
+ * 레코드: txId(8) timestamp(8) amount(4) from 길이(1) from(40) to 길이(1) to(40) 종류(1) 취소한 txId(8) from 잔액(4) to 잔액(4) 빈칸 crc32(4)
+ * - 회원 id 는 varchar(10) 이므로 UTF-8 로 최대 40 byte 다.
+ * - 종류는 이체(0), 취소(1), 이체 후 잔액을 같이 기록한 이체(2) 세가지다.
+ *   잔액을 기록한 이체는 여러번 replay 해도 결과가 같다. (InMemoryLedger)
+ *   커밋하지 못한 이체는 abort 로 취소 레코드를 남기고, replay 는 취소된 이체를 넘기지 않는다.
+ *   append 한 뒤 abort 를 쓰기 전에 프로세스가 죽으면 취소 레코드가 없으므로, replay 가 넘기는 이체는 커밋되지 않았을 수도 있는 이체(intent) 다.
+ * - segment 파일(transfer-{순번}.journal) 은 recordsPerSegment 개 크기로 미리 만들고 map 한다. 가득 차면 다음 segment 로 넘어간다.
+ * - append 는 매핑된 메모리에 쓰기만 한다. 디스크 반영(force) 시점은 FsyncPolicy 로 정하고, sync(txId) 로 그 레코드까지 기다릴 수 있다.
+ * - crc 가 맞지 않는 레코드(0 으로 채워진 빈 자리, 쓰다가 잘린 레코드) 에서 그 segment 의 replay 를 멈춘다.
+ * - 다시 열면 마지막 레코드 다음 자리부터 이어서 쓰고, txId 도 이어서 발급한다.
+ * - segment 는 retireBefore 로만 지운다. maxSegments 개가 차면 지울 때까지 append 가 실패한다. (replay 하지 않은 레코드를 버리지 않는다)
+ * - replay 는 매핑하지 않고 FileChannel 로 읽는다. (읽기 전용 매핑은 GC 전까지 풀리지 않아 지운 segment 도 디스크에 남는다)
+ */
+@Slf4j
+public class TransferJournal implements Closeable {
+
+    public static final int RECORD_SIZE = 128;
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 64 * 1024;
+
+    static final int ID_BYTES = 40;
+    private static final int TYPE_OFFSET = 22 + ID_BYTES * 2;
+    private static final int BALANCE_OFFSET = TYPE_OFFSET + 9;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final byte TYPE_TRANSFER = 0;
+    private static final byte TYPE_ABORT = 1;
+    private static final byte TYPE_TRANSFER_WITH_BALANCES = 2;
+    // replay 할 때 한번에 읽는 레코드 수
+    private static final int READ_CHUNK_RECORDS = 256;
+    private static final String PREFIX = "transfer-";
+    private static final String SUFFIX = ".journal";
+
+    public enum FsyncPolicy {
+        /** append 마다 force - 가장 느리고 잃어버리는 레코드가 없다 */
+        ALWAYS,
+        /** syncEveryRecords 개마다, 그리고 syncIntervalMillis 마다 force - 장애 때 마지막 한 묶음까지 잃을 수 있다 */
+        BATCH,
+        /** rotate / close 때만 force, 나머지는 OS 에 맡긴다 - 프로세스가 죽어도 OS 가 살아 있으면 남는다 */
+        NEVER
+    }
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final FsyncPolicy policy;
+    private final int syncEveryRecords;
+    private final int maxSegments;
+    private final ScheduledExecutorService syncer;
+
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;
+    private MappedByteBuffer segment;
+    private int recordCount;
+    // append 한 레코드 수, force 가 끝난 레코드 수 - 둘의 차이가 아직 디스크에 없을 수 있는 레코드다
+    private long appendedCount;
+    private long syncedCount;
+    private long lastTxId;
+    // force 가 끝난 마지막 txId, sync(txId) 가 잠금 없이 읽는다
+    private volatile long syncedTxId;
+    // sync(txId) 로 force 하는 쓰레드는 한번에 하나
+    private final Object syncLock = new Object();
+    private boolean closed;
+
+    public TransferJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, FsyncPolicy.BATCH, 256, 10);
+    }
+
+    /**
+     * segment 수를 제한하지 않는다.
+     */
+    public TransferJournal(Path directory, int recordsPerSegment, FsyncPolicy policy,
+                           int syncEveryRecords, long syncIntervalMillis) throws IOException {
+        this(directory, recordsPerSegment, policy, syncEveryRecords, syncIntervalMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param syncEveryRecords   BATCH 일 때 force 할 레코드 수
+     * @param syncIntervalMillis BATCH 일 때 레코드 수와 상관없이 force 할 주기
+     * @param maxSegments        보관할 segment 수, 다 차면 retireBefore 로 지울 때까지 append 가 IOException 으로 실패한다
+     */
+    public TransferJournal(Path directory, int recordsPerSegment, FsyncPolicy policy,
+                           int syncEveryRecords, long syncIntervalMillis, int maxSegments) throws IOException {
+        if (recordsPerSegment <= 0 || recordsPerSegment > Integer.MAX_VALUE / RECORD_SIZE) {
+            throw new IllegalArgumentException("invalid recordsPerSegment, recordsPerSegment=" + recordsPerSegment);
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("invalid maxSegments, maxSegments=" + maxSegments);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.policy = policy;
+        this.syncEveryRecords = syncEveryRecords;
+        this.maxSegments = maxSegments;
+        open();
+
+        if (policy == FsyncPolicy.BATCH) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transfer-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * @return 발급한 txId
+     */
+    public synchronized long append(String fromId, String toId, int amount) throws IOException {
+        return write(TYPE_TRANSFER, fromId, toId, amount, 0, 0, 0);
+    }
+
+    /**
+     * 이체 후 두 회원의 잔액을 같이 기록한다.
+     * @return 발급한 txId
+     */
+    public synchronized long append(String fromId, String toId, int amount, int fromBalance, int toBalance) throws IOException {
+        return write(TYPE_TRANSFER_WITH_BALANCES, fromId, toId, amount, 0, fromBalance, toBalance);
+    }
+
+    /**
+     * 커밋하지 못한 이체의 취소 레코드를 append 한다. replay 는 취소된 이체를 넘기지 않는다.
+     * @return 취소 레코드의 txId
+     */
+    public synchronized long abort(long txId) throws IOException {
+        if (txId <= 0 || txId > lastTxId) {
+            throw new IllegalArgumentException("unknown txId, txId=" + txId + ", lastTxId=" + lastTxId);
+        }
+        return write(TYPE_ABORT, "", "", 0, txId, 0, 0);
+    }
+
+    private long write(byte type, String fromId, String toId, int amount, long abortedTxId,
+                       int fromBalance, int toBalance) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("transfer journal is closed");
+        }
+        if (recordCount == recordsPerSegment) {
+            rotate();
+        }
+        long txId = lastTxId + 1;
+        encode(txId, System.currentTimeMillis(), fromId, toId, amount, type, abortedTxId, fromBalance, toBalance);
+        segment.position(recordCount * RECORD_SIZE);
+        segment.put(record);
+        lastTxId = txId;
+        recordCount++;
+        appendedCount++;
+
+        if (policy == FsyncPolicy.ALWAYS || (policy == FsyncPolicy.BATCH && appendedCount - syncedCount >= syncEveryRecords)) {
+            force();
+        }
+        return txId;
+    }
+
+    /**
+     * 아직 force 하지 않은 레코드를 디스크에 반영한다.
+     */
+    public void sync() {
+        MappedByteBuffer target;
+        long upTo;
+        long upToTxId;
+        synchronized (this) {
+            if (appendedCount == syncedCount || closed) {
+                return;
+            }
+            target = segment;
+            upTo = appendedCount;
+            upToTxId = lastTxId;
+        }
+        // force 하는 동안 append 를 막지 않는다. force 가 실패하면 syncedCount 가 그대로라 다음 sync 가 다시 시도한다
+        // (그 사이 rotate 되었어도 이전 segment 는 rotate 가 force 했다. rotate 의 force 가 실패하면 segment 를 바꾸지 않는다)
+        target.force();
+        synchronized (this) {
+            syncedCount = Math.max(syncedCount, upTo);
+            syncedTxId = Math.max(syncedTxId, upToTxId);
+        }
+    }
+
+    /**
+     * txId 까지의 레코드가 디스크에 반영될 때까지 기다린다. (FsyncPolicy 와 상관없이)
+     * 먼저 들어온 쓰레드가 그때까지 append 된 레코드를 모두 force 하고, 그 안에 들어간 쓰레드는 force 없이 돌아간다. (group commit)
+     */
+    public void sync(long txId) {
+        if (syncedTxId >= txId) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedTxId >= txId) {
+                return;
+            }
+            sync();
+        }
+    }
+
+    /**
+     * 모든 레코드의 txId 가 txId 이하인 segment 를 지운다. (이미 다른 곳에 반영해서 replay 할 필요가 없는 레코드)
+     * 지금 쓰고 있는 segment 는 지우지 않는다. (close 한 뒤에는 지운다)
+     * @return 지운 segment 수
+     */
+    public synchronized int retireBefore(long txId) throws IOException {
+        int retired = 0;
+        for (Path path : segments()) {
+            if ((!closed && sequenceOf(path) >= sequence) || lastTxIdOf(path) > txId) {
+                break;
+            }
+            Files.delete(path);
+            retired++;
+        }
+        if (retired > 0) {
+            log.info("transfer journal segments retired, txId={}, segments={}", txId, retired);
+        }
+        return retired;
+    }
+
+    /**
+     * afterTxId 보다 큰 txId 의 이체 레코드를 순서대로 넘긴다. 취소된 이체는 넘기지 않는다.
+     * 취소 레코드는 이체보다 뒤의 segment 에 있을 수 있으므로 취소된 txId 를 먼저 모으고 한번 더 읽는다.
+     * @return 넘긴 레코드 수
+     */
+    public synchronized long replay(long afterTxId, Consumer<TransferRecord> consumer) throws IOException {
+        List<Path> paths = segments();
+        Set<Long> aborted = new HashSet<>();
+        for (Path path : paths) {
+            readRecords(path, bytes -> {
+                if (bytes[TYPE_OFFSET] == TYPE_ABORT) {
+                    aborted.add(ByteBuffer.wrap(bytes).getLong(TYPE_OFFSET + 1));
+                }
+            });
+        }
+        long[] replayed = new long[1];
+        for (Path path : paths) {
+            readRecords(path, bytes -> {
+                if (bytes[TYPE_OFFSET] == TYPE_ABORT) {
+                    return;
+                }
+                TransferRecord transferRecord = decode(bytes);
+                if (transferRecord.getTxId() > afterTxId && !aborted.contains(transferRecord.getTxId())) {
+                    consumer.accept(transferRecord);
+                    replayed[0]++;
+                }
+            });
+        }
+        return replayed[0];
+    }
+
+    public synchronized long getLastTxId() {
+        return lastTxId;
+    }
+
+    /**
+     * 디렉토리의 segment 파일, 순번 순서
+     */
+    public List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        synchronized (this) {
+            if (!closed) {
+                force();
+                closed = true;
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        List<Path> existing = segments();
+        if (existing.isEmpty()) {
+            sequence = 1;
+            segment = map(segmentPath(sequence));
+            return;
+        }
+        // 마지막 segment 의 빈 자리부터 이어서 쓴다
+        Path last = existing.get(existing.size() - 1);
+        sequence = sequenceOf(last);
+        segment = map(last);
+        recordCount = countRecords(segment);
+        clearTail(segment, recordCount);
+        if (recordCount > 0) {
+            lastTxId = decode(segment, recordCount - 1).getTxId();
+        }
+        // 빈 segment 면 이전 segment 의 마지막 레코드에서 txId 를 찾는다
+        for (int i = existing.size() - 2; i >= 0 && lastTxId == 0; i--) {
+            lastTxId = lastTxIdOf(existing.get(i));
+        }
+        syncedTxId = lastTxId;
+        log.info("transfer journal opened, segment={}, records={}, lastTxId={}", last.getFileName(), recordCount, lastTxId);
+    }
+
+    private void rotate() throws IOException {
+        // 지우지 않은 segment 가 maxSegments 개면 새 segment 를 만들지 않는다. 지금 레코드도 쓰지 않고 실패한다
+        if (maxSegments != Integer.MAX_VALUE && segments().size() >= maxSegments) {
+            throw new IOException("transfer journal full, retire replayed segments first, maxSegments=" + maxSegments);
+        }
+        force();
+        segment = map(segmentPath(sequence + 1));
+        sequence++;
+        recordCount = 0;
+    }
+
+    private static long lastTxIdOf(Path path) throws IOException {
+        long[] last = new long[1];
+        readRecords(path, bytes -> last[0] = ByteBuffer.wrap(bytes).getLong(0));
+        return last[0];
+    }
+
+    /**
+     * segment 파일을 앞에서부터 읽어 crc 가 맞는 레코드를 넘긴다. 맞지 않는 레코드에서 멈춘다.
+     * 넘기는 byte[] 는 다음 레코드를 읽을 때 다시 쓴다.
+     */
+    private static void readRecords(Path path, Consumer<byte[]> consumer) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK_RECORDS * RECORD_SIZE);
+        byte[] bytes = new byte[RECORD_SIZE];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                chunk.flip();
+                while (chunk.remaining() >= RECORD_SIZE) {
+                    chunk.get(bytes);
+                    if (!valid(bytes)) {
+                        return;
+                    }
+                    consumer.accept(bytes);
+                }
+            }
+        }
+    }
+
+    private void force() {
+        segment.force();
+        syncedCount = appendedCount;
+        syncedTxId = lastTxId;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.warn("transfer journal sync failed", e);
+        }
+    }
+
+    /**
+     * 쓰는 segment 만 매핑한다. 매핑은 채널을 닫아도 유지된다
+     */
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        }
+    }
+
+    private int countRecords(MappedByteBuffer buffer) {
+        int records = (int) (buffer.capacity() / RECORD_SIZE);
+        for (int i = 0; i < records; i++) {
+            if (decode(buffer, i) == null) {
+                return i;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 망가진 레코드 뒤에 남은 레코드를 지운다. 이어서 쓴 레코드 뒤에 오래된 레코드가 replay 되지 않게 한다.
+     */
+    private static void clearTail(MappedByteBuffer buffer, int validRecords) {
+        int from = validRecords * RECORD_SIZE;
+        int dirtyEnd = from;
+        for (int i = from; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                dirtyEnd = i + 1;
+            }
+        }
+        if (dirtyEnd == from) {
+            return;
+        }
+        log.warn("transfer journal tail cleared, validRecords={}, bytes={}", validRecords, dirtyEnd - from);
+        for (int i = from; i < dirtyEnd; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+    }
+
+    private void encode(long txId, long timestamp, String fromId, String toId, int amount, byte type, long abortedTxId,
+                        int fromBalance, int toBalance) {
+        byte[] from = idBytes(fromId);
+        byte[] to = idBytes(toId);
+        Arrays.fill(record, (byte) 0);
+        recordBuffer.clear();
+        recordBuffer.putLong(txId)
+                .putLong(timestamp)
+                .putInt(amount)
+                .put((byte) from.length).put(from).position(21 + ID_BYTES);
+        recordBuffer.put((byte) to.length).put(to);
+        recordBuffer.put(TYPE_OFFSET, type).putLong(TYPE_OFFSET + 1, abortedTxId)
+                .putInt(BALANCE_OFFSET, fromBalance).putInt(BALANCE_OFFSET + 4, toBalance);
+        crc.reset();
+        crc.update(record, 0, CRC_OFFSET);
+        recordBuffer.putInt(CRC_OFFSET, (int) crc.getValue());
+    }
+
+    /**
+     * @return crc 가 맞지 않으면 null
+     */
+    private static TransferRecord decode(ByteBuffer buffer, int index) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        ByteBuffer source = buffer.duplicate();
+        source.position(index * RECORD_SIZE);
+        source.get(bytes);
+        return valid(bytes) ? decode(bytes) : null;
+    }
+
+    private static boolean valid(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, CRC_OFFSET);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        return in.getInt(CRC_OFFSET) == (int) crc.getValue() && in.getLong(0) != 0;
+    }
+
+    private static TransferRecord decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        long txId = in.getLong();
+        long timestamp = in.getLong();
+        int amount = in.getInt();
+        String fromId = new String(bytes, 21, bytes[20], StandardCharsets.UTF_8);
+        String toId = new String(bytes, 22 + ID_BYTES, bytes[21 + ID_BYTES], StandardCharsets.UTF_8);
+        if (bytes[TYPE_OFFSET] == TYPE_TRANSFER_WITH_BALANCES) {
+            return new TransferRecord(txId, timestamp, fromId, toId, amount,
+                    in.getInt(BALANCE_OFFSET), in.getInt(BALANCE_OFFSET + 4));
+        }
+        return new TransferRecord(txId, timestamp, fromId, toId, amount);
+    }
+
+    private static byte[] idBytes(String memberId) {
+        byte[] bytes = memberId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > ID_BYTES) {
+            throw new IllegalArgumentException("memberId too long, memberId=" + memberId);
+        }
+        return bytes;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,334 @@
+package inflearn.jdbc.ledger;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.domain.TransferRecord;
+import inflearn.jdbc.exception.InsufficientBalanceException;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.journal.TransferJournal;
+import inflearn.jdbc.journal.TransferJournal.FsyncPolicy;
+import inflearn.jdbc.repository.TransactionalMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 메모리 원장 - 잔액을 메모리에 두고 이체하고, DB(member 테이블) 에는 나중에 모아서 반영한다. (write-behind)
+ *
+ * - 회원 id 는 시작할 때 slot 번호(int) 로 바꾸고 잔액은 int[] 에 둔다. slot 을 stripe 개수로 나눈 나머지 stripe 의 잠금으로 보호한다.
+ *   이체는 두 회원의 stripe 를 번호 순서로 잠그므로 서로 데드락이 나지 않는다.
+ * - 이체는 먼저 TransferJournal 에 이체 후 잔액을 같이 append 하고 메모리에 반영한다.
+ *   증감액이 아니라 이체 후 잔액을 replay 하므로 DB 에 이미 반영한 레코드를 다시 replay 해도 결과가 같다.
+ *   stripe 잠금을 푼 뒤 그 레코드가 force 될 때까지(sync(txId)) 기다렸다가 돌아간다. 동시에 이체하는 쓰레드는 force 한번을 같이 쓴다. (group commit)
+ *   잠금을 먼저 풀기 때문에 force 전 잔액을 다른 이체가 읽을 수 있지만, 저널은 순서대로 force 되므로 그 이체가 돌아갈 때는 앞의 이체도 디스크에 있다.
+ * - flushIntervalMillis 마다 모든 stripe 를 잠시 잠그고 변경된 회원의 잔액과 마지막 txId 를 복사한다.
+ *   잠금을 풀고 나서 그 txId 까지 force 하고, 회원 id 순서로 JDBC batch 한번(트랜잭션 하나) 으로 반영한다. 성공하면 그 txId 까지의 segment 를 지운다.
+ * - 시작할 때 DB 에서 잔액을 읽고 남아 있는 저널을 replay 한 뒤 바로 DB 에 반영한다. close 하면 모두 반영하고 저널을 비운다.
+ *
+ * transfer 가 정상적으로 돌아간 이체는 프로세스나 OS 가 죽어도 재시작할 때 저널에서 복구한다.
+ * force 에 실패하면 그 이체는 메모리에는 반영됐지만 결과를 알 수 없으므로 예외를 던지고, 이후 이체는 모두 IllegalStateException 으로 실패한다.
+ * 원장이 동작하는 동안 이 회원들의 잔액은 원장만 변경해야 한다. 시작 후 DB 에 추가된 회원은 원장에 없다.
+ */
+@Slf4j
+public class InMemoryLedger implements AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    private final TransactionalMemberRepository repository;
+    private final TransactionTemplate txTemplate;
+    private final Path journalDirectory;
+    private final long flushIntervalMillis;
+
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final String[] memberIds;
+    private final int[] balances;
+    // stripe 잠금으로 보호한다
+    private final boolean[] dirty;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private volatile TransferJournal journal;
+    // force 에 실패한 뒤 다시 성공해도 앞의 레코드가 디스크에 있다고 보장할 수 없으므로 이후 이체를 막는다
+    private volatile RuntimeException syncFailure;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * @param capacity 원장에 올릴 수 있는 최대 회원 수
+     */
+    public InMemoryLedger(TransactionalMemberRepository repository, PlatformTransactionManager transactionManager,
+                          Path journalDirectory, int capacity, long flushIntervalMillis) {
+        this.repository = repository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.journalDirectory = journalDirectory;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.memberIds = new String[capacity];
+        this.balances = new int[capacity];
+        this.dirty = new boolean[capacity];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * DB 에서 잔액을 읽고, 남은 저널을 replay 해서 DB 에 반영한 뒤 write-behind 를 시작한다.
+     */
+    public void start() throws SQLException, IOException {
+        try (Stream<Member> members = repository.streamAll()) {
+            members.forEach(member -> register(member.getMemberId(), member.getMoney()));
+        }
+
+        // 이체마다 sync(txId) 로 기다리므로 정책에 따른 force 는 끈다
+        journal = new TransferJournal(journalDirectory, TransferJournal.DEFAULT_RECORDS_PER_SEGMENT, FsyncPolicy.NEVER, 0, 0);
+        long records = journal.replay(0, this::recover);
+        log.info("ledger journal replayed, records={}", records);
+        flush();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("ledger started, members={}", slots.size());
+    }
+
+    public void transfer(String fromId, String toId, int money) {
+        checkStarted();
+        if (syncFailure != null) {
+            throw new IllegalStateException("ledger journal sync failed before", syncFailure);
+        }
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0 보다 커야 합니다 money=" + money);
+        }
+        int from = slotOf(fromId);
+        int to = slotOf(toId);
+        if (from == to) {
+            throw new IllegalArgumentException("같은 회원에게 이체할 수 없습니다 memberId=" + fromId);
+        }
+
+        // slot 이 아니라 stripe 번호 순서로 잠가야 한다
+        int fromStripe = from % STRIPES;
+        int toStripe = to % STRIPES;
+        Stripe first = stripes[Math.min(fromStripe, toStripe)];
+        Stripe second = stripes[Math.max(fromStripe, toStripe)];
+        long txId;
+        first.lock();
+        if (second != first) {
+            second.lock();
+        }
+        try {
+            if (balances[from] < money) {
+                throw new InsufficientBalanceException(fromId);
+            }
+            int fromBalance = balances[from] - money;
+            int toBalance = Math.addExact(balances[to], money);
+            // 저널에 쓰지 못하면 메모리도 바꾸지 않는다
+            txId = journal.append(fromId, toId, money, fromBalance, toBalance);
+            balances[from] = fromBalance;
+            balances[to] = toBalance;
+            markDirty(from);
+            markDirty(to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (second != first) {
+                second.unlock();
+            }
+            first.unlock();
+        }
+
+        try {
+            journal.sync(txId);
+        } catch (RuntimeException e) {
+            syncFailure = e;
+            throw e;
+        }
+    }
+
+    public int getBalance(String memberId) {
+        int slot = slotOf(memberId);
+        Stripe stripe = stripes[slot % STRIPES];
+        stripe.lock();
+        try {
+            return balances[slot];
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * 지금까지 변경된 잔액을 DB 에 반영한다. write-behind 쓰레드가 주기적으로 호출한다.
+     * @return 반영한 회원 수
+     */
+    public synchronized int flush() throws IOException {
+        checkStarted();
+        Map<String, Integer> changed = new TreeMap<>();
+        long flushedTxId;
+        lockAll();
+        try {
+            for (Stripe stripe : stripes) {
+                for (int i = 0; i < stripe.dirtyCount; i++) {
+                    int slot = stripe.dirtySlots[i];
+                    dirty[slot] = false;
+                    changed.put(memberIds[slot], balances[slot]);
+                }
+                stripe.dirtyCount = 0;
+            }
+            flushedTxId = journal.getLastTxId();
+        } finally {
+            unlockAll();
+        }
+
+        if (!changed.isEmpty()) {
+            try {
+                // 저널에 없는 잔액이 DB 에 먼저 반영되지 않게 한다
+                journal.sync(flushedTxId);
+                List<String> missing = txTemplate.execute(status -> {
+                    try {
+                        return repository.updateMoneyAll(changed);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                if (!missing.isEmpty()) {
+                    log.warn("ledger members not found in db, memberIds={}", missing);
+                }
+            } catch (RuntimeException e) {
+                // 다음 flush 에서 그때의 잔액으로 다시 반영한다
+                remarkDirty(changed.keySet());
+                throw e;
+            }
+        }
+        journal.retireBefore(flushedTxId);
+        return changed.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            flush();
+            journal.close();
+            // 모두 DB 에 반영했으므로 다음에 시작할 때 replay 할 레코드가 없다
+            journal.retireBefore(journal.getLastTxId());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.warn("ledger write-behind failed", e);
+        }
+    }
+
+    private void checkStarted() {
+        if (journal == null) {
+            throw new IllegalStateException("ledger is not started");
+        }
+    }
+
+    private void register(String memberId, int money) {
+        int slot = slots.size();
+        if (slot >= memberIds.length) {
+            throw new IllegalStateException("ledger capacity exceeded, capacity=" + memberIds.length);
+        }
+        memberIds[slot] = memberId;
+        balances[slot] = money;
+        slots.put(memberId, slot);
+    }
+
+    private void recover(TransferRecord record) {
+        if (record.getFromBalance() == null) {
+            log.warn("journal record without balances ignored, txId={}", record.getTxId());
+            return;
+        }
+        recover(record.getFromId(), record.getFromBalance());
+        recover(record.getToId(), record.getToBalance());
+    }
+
+    private void recover(String memberId, int balance) {
+        Integer slot = slots.get(memberId);
+        if (slot == null) {
+            log.warn("journal member not found in db, memberId={}", memberId);
+            return;
+        }
+        balances[slot] = balance;
+        markDirty(slot);
+    }
+
+    private int slotOf(String memberId) {
+        Integer slot = slots.get(memberId);
+        if (slot == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        return slot;
+    }
+
+    private void markDirty(int slot) {
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            stripes[slot % STRIPES].add(slot);
+        }
+    }
+
+    private void remarkDirty(Iterable<String> memberIds) {
+        for (String memberId : memberIds) {
+            int slot = slots.get(memberId);
+            Stripe stripe = stripes[slot % STRIPES];
+            stripe.lock();
+            try {
+                markDirty(slot);
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * stripe 잠금 + 이 stripe 에서 변경된 slot 목록
+     */
+    private static final class Stripe extends ReentrantLock {
+        private int[] dirtySlots = new int[16];
+        private int dirtyCount;
+
+        private void add(int slot) {
+            if (dirtyCount == dirtySlots.length) {
+                dirtySlots = Arrays.copyOf(dirtySlots, dirtyCount * 2);
+            }
+            dirtySlots[dirtyCount++] = slot;
+        }
+    }
+}
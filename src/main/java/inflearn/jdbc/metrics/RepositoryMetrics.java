@@ -0,0 +1,116 @@
+package inflearn.jdbc.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 리포지토리 메서드별 지표
+ *
+ * 매 호출마다 INFO 로그를 남기는 대신 히스토그램에 기록만 한다. (커넥션 획득 시간, SQL 실행 시간, 변경/조회 row 수)
+ * 호출마다 로그가 필요하면 setDebugSampleRate(n) 으로 n 번에 한번만 DEBUG 로그를 남기게 할 수 있다. (기본 0 = 끔)
+ */
+public class RepositoryMetrics {
+
+    private final String name;
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private volatile int debugSampleRate;
+
+    public RepositoryMetrics(String name) {
+        this.name = name;
+    }
+
+    public MethodMetrics method(String methodName) {
+        MethodMetrics metrics = methods.get(methodName);
+        if (metrics != null) {
+            return metrics;
+        }
+        return methods.computeIfAbsent(methodName, MethodMetrics::new);
+    }
+
+    public Map<String, MethodMetrics> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param debugSampleRate n 번 호출에 한번 DEBUG 로그, 0 이면 로그를 남기지 않는다
+     */
+    public void setDebugSampleRate(int debugSampleRate) {
+        if (debugSampleRate < 0) {
+            throw new IllegalArgumentException("debugSampleRate must not be negative, debugSampleRate=" + debugSampleRate);
+        }
+        this.debugSampleRate = debugSampleRate;
+    }
+
+    public boolean shouldSample() {
+        int rate = debugSampleRate;
+        return rate > 0 && sampleCounter.getAndIncrement() % rate == 0;
+    }
+
+    public void reset() {
+        methods.values().forEach(MethodMetrics::reset);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        methods.forEach((methodName, metrics) -> sb.append(System.lineSeparator()).append("  ").append(metrics));
+        return sb.toString();
+    }
+
+    public static class MethodMetrics {
+        private final String name;
+        private final Histogram acquireNanos = new Histogram();
+        private final Histogram executeNanos = new Histogram();
+        private final Histogram rows = new Histogram();
+
+        private MethodMetrics(String name) {
+            this.name = name;
+        }
+
+        public void recordAcquire(long nanos) {
+            acquireNanos.record(nanos);
+        }
+
+        public void recordExecute(long nanos) {
+            executeNanos.record(nanos);
+        }
+
+        public void recordRows(long rowCount) {
+            rows.record(rowCount);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Histogram getAcquireNanos() {
+            return acquireNanos;
+        }
+
+        public Histogram getExecuteNanos() {
+            return executeNanos;
+        }
+
+        public Histogram getRows() {
+            return rows;
+        }
+
+        public void reset() {
+            acquireNanos.reset();
+            executeNanos.reset();
+            rows.reset();
+        }
+
+        @Override
+        public String toString() {
+            return name + " acquireNanos[" + acquireNanos + "] executeNanos[" + executeNanos + "] rows[" + rows + "]";
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.cache.MemberCache;
+import inflearn.jdbc.connection.StatementCache;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.metrics.RepositoryMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 캐시 - 다른 MemberRepository(JDBC, 메모리) 앞에 read-through 캐시 (데코레이터)
+ *
+ * 변경(save, update, delete ...) 하면 DB 반영 직후 캐시에서 지운다.
+ * 트랜잭션 안에서 변경한 회원은 커밋(또는 롤백)이 끝난 뒤에 한번 더 지우고, 그 전까지는 캐시를 거치지 않는다.
+ * 커밋 전의 값이 다른 쓰레드에게 보이면 안되기 때문이다.
+ * 트랜잭션 동기화 매니저(TransactionSynchronizationManager) 는 DataSourceUtils 가 커넥션을 보관할 때 쓰는 것과 같다.
+ *
+ * 감싼 저장소가 트랜잭션을 지원할 때만 transactional() 로 자기 자신을 돌려준다. 지원하지 않으면 findByIdForUpdate, updateMoneyAll 은
+ * UnsupportedOperationException 을 던진다.
+ */
+@Slf4j
+public class CachedMemberRepositoryV3 implements TransactionalMemberRepository {
+
+    private final MemberRepository delegate;
+    private final MemberCache cache;
+
+    public CachedMemberRepositoryV3(DataSource dataSource, MemberCache cache) {
+        this(new MemberRepositoryV3(dataSource), cache);
+    }
+
+    public CachedMemberRepositoryV3(DataSource dataSource, RepositoryMetrics metrics, StatementCache statementCache, MemberCache cache) {
+        this(new MemberRepositoryV3(dataSource, metrics, statementCache), cache);
+    }
+
+    public CachedMemberRepositoryV3(MemberRepository delegate, MemberCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Member save(Member member) throws SQLException {
+        try {
+            return delegate.save(member);
+        } finally {
+            evict(member.getMemberId());
+        }
+    }
+
+    @Override
+    public List<Integer> saveAll(Collection<Member> members) throws SQLException {
+        try {
+            return delegate.saveAll(members);
+        } finally {
+            for (Member member : members) {
+                evict(member.getMemberId());
+            }
+        }
+    }
+
+    @Override
+    public Member upsert(Member member) throws SQLException {
+        try {
+            return delegate.upsert(member);
+        } finally {
+            evict(member.getMemberId());
+        }
+    }
+
+    @Override
+    public List<Integer> upsertAll(Collection<Member> members) throws SQLException {
+        try {
+            return delegate.upsertAll(members);
+        } finally {
+            for (Member member : members) {
+                evict(member.getMemberId());
+            }
+        }
+    }
+
+    @Override
+    public Member findById(String memberId) throws SQLException {
+        if (isDirtyInTransaction(memberId)) {
+            return delegate.findById(memberId);
+        }
+        Member cached = cache.get(memberId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        Member member = delegate.findById(memberId);
+        cache.put(memberId, member, stamp);
+        return member;
+    }
+
+    /**
+     * 없는 회원은 캐시하지 않는다. (있는 회원만 캐시에 넣는다)
+     */
+    @Override
+    public Optional<Member> findOptional(String memberId) throws SQLException {
+        if (isDirtyInTransaction(memberId)) {
+            return delegate.findOptional(memberId);
+        }
+        Member cached = cache.get(memberId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = cache.stamp();
+        Optional<Member> member = delegate.findOptional(memberId);
+        member.ifPresent(found -> cache.put(memberId, found, stamp));
+        return member;
+    }
+
+    @Override
+    public boolean exists(String memberId) throws SQLException {
+        if (!isDirtyInTransaction(memberId) && cache.get(memberId) != null) {
+            return true;
+        }
+        return delegate.exists(memberId);
+    }
+
+    /**
+     * 캐시에 있는 회원은 캐시에서, 나머지만 DB 에서 한번에 읽고 캐시에 넣는다.
+     */
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds, Consumer<String> missing) throws SQLException {
+        Set<String> requested = new LinkedHashSet<>(memberIds);
+        Map<String, Member> cached = new HashMap<>();
+        List<String> toLoad = new ArrayList<>();
+        for (String memberId : requested) {
+            Member member = isDirtyInTransaction(memberId) ? null : cache.get(memberId);
+            if (member != null) {
+                cached.put(memberId, member);
+            } else {
+                toLoad.add(memberId);
+            }
+        }
+
+        long stamp = cache.stamp();
+        Map<String, Member> loaded = toLoad.isEmpty() ? Map.of() : delegate.findByIds(toLoad, missing);
+        for (Map.Entry<String, Member> entry : loaded.entrySet()) {
+            if (!isDirtyInTransaction(entry.getKey())) {
+                cache.put(entry.getKey(), entry.getValue(), stamp);
+            }
+        }
+
+        Map<String, Member> result = new LinkedHashMap<>(requested.size() * 2);
+        for (String memberId : requested) {
+            Member member = cached.containsKey(memberId) ? cached.get(memberId) : loaded.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 잠그는 조회는 캐시를 거치지 않는다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) throws SQLException {
+        return requireTransactional().findByIdForUpdate(memberId);
+    }
+
+    /**
+     * 캐시를 거치지 않는다.
+     */
+    @Override
+    public Stream<Member> streamAll() throws SQLException {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public void update(String memberId, int money) throws SQLException {
+        try {
+            delegate.update(memberId, money);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public boolean update(String memberId, int money, long expectedVersion) throws SQLException {
+        try {
+            return delegate.update(memberId, money, expectedVersion);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public List<String> updateAll(Collection<Member> members) throws SQLException {
+        try {
+            return delegate.updateAll(members);
+        } finally {
+            for (Member member : members) {
+                evict(member.getMemberId());
+            }
+        }
+    }
+
+    @Override
+    public List<String> updateMoneyAll(Map<String, Integer> balances) throws SQLException {
+        try {
+            return requireTransactional().updateMoneyAll(balances);
+        } finally {
+            for (String memberId : balances.keySet()) {
+                evict(memberId);
+            }
+        }
+    }
+
+    @Override
+    public int deposit(String memberId, int money) throws SQLException {
+        try {
+            return delegate.deposit(memberId, money);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public int withdraw(String memberId, int money) throws SQLException {
+        try {
+            return delegate.withdraw(memberId, money);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public List<String> addMoneyAll(Map<String, Integer> deltas) throws SQLException {
+        try {
+            return delegate.addMoneyAll(deltas);
+        } finally {
+            for (String memberId : deltas.keySet()) {
+                evict(memberId);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String memberId) throws SQLException {
+        try {
+            delegate.delete(memberId);
+        } finally {
+            evict(memberId);
+        }
+    }
+
+    @Override
+    public DataAccessException translate(String task, SQLException e) {
+        return requireTransactional().translate(task, e);
+    }
+
+    @Override
+    public Optional<TransactionalMemberRepository> transactional() {
+        return delegate.transactional().isPresent() ? Optional.of(this) : Optional.empty();
+    }
+
+    public MemberCache getCache() {
+        return cache;
+    }
+
+    private TransactionalMemberRepository requireTransactional() {
+        return delegate.transactional()
+                .orElseThrow(() -> new UnsupportedOperationException("not transactional, delegate=" + delegate.getClass().getSimpleName()));
+    }
+
+    private void evict(String memberId) {
+        cache.invalidate(memberId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            dirtyMemberIds().add(memberId);
+        }
+    }
+
+    private boolean isDirtyInTransaction(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> dirty = (Set<String>) TransactionSynchronizationManager.getResource(cache);
+        return dirty != null && dirty.contains(memberId);
+    }
+
+    /**
+     * 현재 트랜잭션에서 변경한 회원 id, 처음 변경할 때 트랜잭션 동기화 매니저에 등록한다.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> dirtyMemberIds() {
+        Set<String> dirty = (Set<String>) TransactionSynchronizationManager.getResource(cache);
+        if (dirty != null) {
+            return dirty;
+        }
+        Set<String> newDirty = new HashSet<>();
+        TransactionSynchronizationManager.bindResource(cache, newDirty);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // 커밋이든 롤백이든 트랜잭션이 끝난 뒤에 지워야 다음 조회가 확정된 값을 읽는다
+                TransactionSynchronizationManager.unbindResourceIfPossible(cache);
+                for (String memberId : newDirty) {
+                    cache.invalidate(memberId);
+                }
+                log.debug("cache invalidated after completion, status={}, memberIds={}", status, newDirty);
+            }
+        });
+        return newDirty;
+    }
+}
@@ -0,0 +1,111 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 회원 저장소 - 서비스는 구현(JDBC, 메모리, 캐시) 이 아니라 이 인터페이스에 의존한다.
+ *
+ * 메서드 하나하나는 그 호출 안에서 원자적이다. 여러 호출을 묶어서 롤백하거나 row 를 잠그는 기능은 TransactionalMemberRepository 에 있고,
+ * 지원하는 구현만 transactional() 로 돌려준다.
+ *
+ * 구현
+ * - MemberRepositoryV3 : JDBC, 트랜잭션 동기화 매니저의 커넥션을 사용한다 (TransactionalMemberRepository)
+ * - CachedMemberRepositoryV3 : 다른 MemberRepository 앞에 read-through 캐시 (감싼 저장소가 지원하면 TransactionalMemberRepository)
+ * - MemoryMemberRepository : ConcurrentHashMap, 트랜잭션(롤백) 과 잠금이 없다
+ *
+ * JDBC 구현에 맞춰 SQLException 을 던진다. 회원이 없으면 findById 는 MemberNotFoundException(NoSuchElementException) 을 던진다.
+ * 회원이 없는 경우가 흔하면 예외 대신 findOptional / exists 를 사용한다.
+ */
+public interface MemberRepository {
+
+    Member save(Member member) throws SQLException;
+
+    /**
+     * @return insert 된 row 수 (JDBC 구현은 batch chunk 별)
+     */
+    List<Integer> saveAll(Collection<Member> members) throws SQLException;
+
+    /**
+     * 있으면 잔액을 덮어쓰고(version 증가), 없으면 저장한다. 조회 후 save / update 를 고르는 대신 사용한다.
+     */
+    Member upsert(Member member) throws SQLException;
+
+    /**
+     * @return upsert 된 row 수 (JDBC 구현은 batch chunk 별)
+     */
+    List<Integer> upsertAll(Collection<Member> members) throws SQLException;
+
+    Member findById(String memberId) throws SQLException;
+
+    /**
+     * @return 회원, 없으면 Optional.empty() (예외를 만들지 않는다)
+     */
+    Optional<Member> findOptional(String memberId) throws SQLException;
+
+    boolean exists(String memberId) throws SQLException;
+
+    /**
+     * @return 요청 순서대로 찾은 회원, 없는 회원은 빠진다
+     */
+    default Map<String, Member> findByIds(Collection<String> memberIds) throws SQLException {
+        return findByIds(memberIds, memberId -> {
+        });
+    }
+
+    /**
+     * @param missing 없는 회원 id 를 받는다
+     */
+    Map<String, Member> findByIds(Collection<String> memberIds, Consumer<String> missing) throws SQLException;
+
+    /**
+     * 전체 회원, 순서는 정하지 않는다. 반드시 close 해야 한다. (JDBC 구현은 close 할 때 커넥션을 반환한다)
+     */
+    Stream<Member> streamAll() throws SQLException;
+
+    void update(String memberId, int money) throws SQLException;
+
+    /**
+     * 낙관적 잠금 update
+     * @return 변경 여부, version 이 다르면 false
+     */
+    boolean update(String memberId, int money, long expectedVersion) throws SQLException;
+
+    /**
+     * 낙관적 잠금 update 여러건
+     * @return version 이 달라서 변경되지 않은 회원 id
+     */
+    List<String> updateAll(Collection<Member> members) throws SQLException;
+
+    /**
+     * @return 변경된 회원 수, 회원이 없으면 0
+     */
+    int deposit(String memberId, int money) throws SQLException;
+
+    /**
+     * @return 변경된 회원 수, 회원이 없거나 잔액이 부족하면 0
+     */
+    int withdraw(String memberId, int money) throws SQLException;
+
+    /**
+     * 회원별 증감액을 더한다. 결과가 음수가 되는 회원은 변경하지 않는다.
+     * @return 변경되지 않은 회원 id (회원이 없거나 잔액 부족)
+     */
+    List<String> addMoneyAll(Map<String, Integer> deltas) throws SQLException;
+
+    void delete(String memberId) throws SQLException;
+
+    /**
+     * @return 트랜잭션(롤백, row 잠금) 을 지원하면 그 기능, 지원하지 않으면 Optional.empty()
+     */
+    default Optional<TransactionalMemberRepository> transactional() {
+        return Optional.empty();
+    }
+}
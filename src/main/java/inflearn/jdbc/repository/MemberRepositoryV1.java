@@ -1,12 +1,15 @@
 package inflearn.jdbc.repository;
 
 import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.metrics.RepositoryMetrics;
+import inflearn.jdbc.metrics.RepositoryMetrics.MethodMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.support.JdbcUtils;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.NoSuchElementException;
+import java.util.Optional;
 
 /**
  * JDBC - DataSource 사용, JdbcUtils 사용
@@ -14,10 +17,24 @@ import java.util.NoSuchElementException;
 @Slf4j
 public class MemberRepositoryV1 {
 
+    private static final String SELECT_COLUMNS = "member_id, money";
+    private static final String SELECT_BY_ID_SQL = "select " + SELECT_COLUMNS + " from member where member_id = ?";
+    private static final MemberRowMapper ROW_MAPPER = MemberRowMapper.forColumns(SELECT_COLUMNS);
+
     private final DataSource dataSource;
+    private final RepositoryMetrics metrics;
 
     public MemberRepositoryV1(DataSource dataSource) {
+        this(dataSource, new RepositoryMetrics("MemberRepositoryV1"));
+    }
+
+    public MemberRepositoryV1(DataSource dataSource, RepositoryMetrics metrics) {
         this.dataSource = dataSource;
+        this.metrics = metrics;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
     }
 
     public Member save(Member member) throws SQLException {
@@ -27,11 +44,11 @@ public class MemberRepositoryV1 {
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
+            con = getConnection("save");
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
-            pstmt.executeUpdate();
+            executeUpdate(pstmt, "save");
             return member;
         } catch (SQLException e) {
             log.error("db error", e);
@@ -43,25 +60,69 @@ public class MemberRepositoryV1 {
     }
 
     public Member findById(String memberId) throws SQLException {
-        String sql = "select * from member where member_id = ?";
+        Member member = selectById("findById", memberId);
+        if (member == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        return member;
+    }
+
+    /**
+     * 회원이 없으면 예외 대신 Optional.empty() - 없는 회원을 자주 찾는 경우
+     */
+    public Optional<Member> findOptional(String memberId) throws SQLException {
+        return Optional.ofNullable(selectById("findOptional", memberId));
+    }
+
+    /**
+     * 회원 존재 여부만 확인한다. (Member 를 만들지 않음)
+     */
+    public boolean exists(String memberId) throws SQLException {
+        String sql = "select 1 from member where member_id = ?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
 
         try {
-            con = getConnection();
+            con = getConnection("exists");
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, memberId);
 
-            rs = pstmt.executeQuery();
+            rs = executeQuery(pstmt, "exists");
+            boolean exists = rs.next();
+            metrics.method("exists").recordRows(exists ? 1 : 0);
+            return exists;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * @return 회원, 없으면 null
+     */
+    private Member selectById(String method, String memberId) throws SQLException {
+        String sql = SELECT_BY_ID_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection(method);
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+
+            rs = executeQuery(pstmt, method);
             if (rs.next()) {
-                Member member = new Member();
-                member.setMemberId(rs.getString("member_id"));
-                member.setMoney(rs.getInt("money"));
-                return member;
+                metrics.method(method).recordRows(1);
+                return ROW_MAPPER.mapRow(rs);
             } else {
-                throw new NoSuchElementException("member not found memberId=" + memberId);
+                metrics.method(method).recordRows(0);
+                return null;
             }
 
         } catch (SQLException e) {
@@ -81,12 +142,11 @@ public class MemberRepositoryV1 {
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
+            con = getConnection("update");
             pstmt = con.prepareStatement(sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
-            int resultSize = pstmt.executeUpdate();
-            log.info("resultSize={}", resultSize);
+            executeUpdate(pstmt, "update");
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
@@ -104,10 +164,10 @@ public class MemberRepositoryV1 {
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
+            con = getConnection("delete");
             pstmt = con.prepareStatement(sql);
             pstmt.setString(1, memberId);
-            pstmt.executeUpdate();
+            executeUpdate(pstmt, "delete");
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
@@ -124,11 +184,34 @@ public class MemberRepositoryV1 {
     }
 
 
-    private Connection getConnection() throws SQLException {
+    private Connection getConnection(String method) throws SQLException {
+        long start = System.nanoTime();
         Connection con = dataSource.getConnection();
-        log.info("get connection={}, class={}", con, con.getClass());
+        metrics.method(method).recordAcquire(System.nanoTime() - start);
+        if (log.isDebugEnabled() && metrics.shouldSample()) {
+            log.debug("{} get connection={}, class={}", method, con, con.getClass());
+        }
         return con;
     }
 
+    private int executeUpdate(PreparedStatement pstmt, String method) throws SQLException {
+        MethodMetrics methodMetrics = metrics.method(method);
+        long start = System.nanoTime();
+        int resultSize = pstmt.executeUpdate();
+        methodMetrics.recordExecute(System.nanoTime() - start);
+        methodMetrics.recordRows(resultSize);
+        if (log.isDebugEnabled() && metrics.shouldSample()) {
+            log.debug("{} resultSize={}", method, resultSize);
+        }
+        return resultSize;
+    }
+
+    private ResultSet executeQuery(PreparedStatement pstmt, String method) throws SQLException {
+        long start = System.nanoTime();
+        ResultSet rs = pstmt.executeQuery();
+        metrics.method(method).recordExecute(System.nanoTime() - start);
+        return rs;
+    }
+
 
 }
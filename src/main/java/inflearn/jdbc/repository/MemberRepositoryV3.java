@@ -1,13 +1,36 @@
 package inflearn.jdbc.repository;
 
+import inflearn.jdbc.connection.StatementCache;
 import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.domain.MemberPage;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.metrics.RepositoryMetrics;
+import inflearn.jdbc.metrics.RepositoryMetrics.MethodMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 트랜잭션 - 트랜잭션 매니저
@@ -15,26 +38,99 @@ import java.util.NoSuchElementException;
  * DataSourceUtils.releaseConnection()
  * */
 @Slf4j
-public class MemberRepositoryV3 {
+public class MemberRepositoryV3 implements TransactionalMemberRepository {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    static final String INSERT_SQL = "insert into member(member_id, money) values (?, ?)";
+    static final String SELECT_BY_ID_SQL = "select " + MemberRowMapper.COLUMNS + " from member where member_id = ?";
+    static final String UPDATE_SQL = "update member set money=?, version=version+1 where member_id=?";
+    static final String DELETE_SQL = "delete from member where member_id=?";
+    /**
+     * 있으면 update(version 증가), 없으면 insert. H2 의 merge into ... key(member_id) 는 지정한 컬럼만 덮어써서 version 을 올릴 수 없으므로
+     * 표준 merge into ... using 을 사용한다. (낙관적 잠금 update 와 섞여도 갱신 손실이 없게)
+     */
+    static final String UPSERT_SQL = "merge into member m"
+            + " using (values (cast(? as varchar(10)), cast(? as integer))) s(member_id, money)"
+            + " on m.member_id = s.member_id"
+            + " when matched then update set m.money = s.money, m.version = m.version + 1"
+            + " when not matched then insert (member_id, money) values (s.member_id, s.money)";
+
+    /**
+     * 자주 쓰는 SQL, 시작할 때 미리 prepare 해둔다 (ConnectionPoolWarmer)
+     */
+    public static final List<String> HOT_STATEMENTS = List.of(INSERT_SQL, SELECT_BY_ID_SQL, UPDATE_SQL, DELETE_SQL);
+
+    /**
+     * findByIds 의 in (...) 파라미터 개수. 요청 개수 그대로 SQL 을 만들면 모양이 매번 달라서 statement 를 재사용할 수 없다.
+     * 가장 가까운 큰 크기로 올리고 남는 자리는 마지막 id 로 채운다.
+     */
+    static final int[] IN_LIST_BUCKETS = {1, 4, 16, 64, 256};
+    private static final String[] IN_LIST_SQL = new String[IN_LIST_BUCKETS.length];
+
+    static {
+        for (int i = 0; i < IN_LIST_BUCKETS.length; i++) {
+            StringBuilder sb = new StringBuilder("select " + MemberRowMapper.COLUMNS + " from member where member_id in (?");
+            for (int j = 1; j < IN_LIST_BUCKETS[i]; j++) {
+                sb.append(", ?");
+            }
+            IN_LIST_SQL[i] = sb.append(')').toString();
+        }
+    }
 
     private final DataSource dataSource;
+    private final RepositoryMetrics metrics;
+    // null 이면 매번 prepareStatement / close
+    private final StatementCache statementCache;
+    // 만들 때 DB 메타데이터를 읽느라 커넥션을 쓰므로 처음 번역할 때 만든다
+    private volatile SQLExceptionTranslator exceptionTranslator;
 
     public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, new RepositoryMetrics("MemberRepositoryV3"));
+    }
+
+    public MemberRepositoryV3(DataSource dataSource, RepositoryMetrics metrics) {
+        this(dataSource, metrics, null);
+    }
+
+    public MemberRepositoryV3(DataSource dataSource, RepositoryMetrics metrics, StatementCache statementCache) {
         this.dataSource = dataSource;
+        this.metrics = metrics;
+        this.statementCache = statementCache;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * DB 의 에러 코드로 번역한다. (SQLErrorCodeSQLExceptionTranslator, 모르는 코드면 SQLState 로)
+     */
+    @Override
+    public DataAccessException translate(String task, SQLException e) {
+        SQLExceptionTranslator translator = exceptionTranslator;
+        if (translator == null) {
+            translator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+            exceptionTranslator = translator;
+        }
+        DataAccessException translated = translator.translate(task, null, e);
+        return translated != null ? translated : new UncategorizedSQLException(task, null, e);
     }
 
+    @Override
     public Member save(Member member) throws SQLException {
-        String sql = "insert into member(member_id, money) values (?, ?)";
+        String sql = INSERT_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            con = getConnection("save");
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
-            pstmt.executeUpdate();
+            executeUpdate(pstmt, "save");
             return member;
         } catch (SQLException e) {
             log.error("db error", e);
@@ -45,75 +141,702 @@ public class MemberRepositoryV3 {
 
     }
 
+    /**
+     * JDBC batch 로 여러 회원을 한번에 저장한다. (기본 chunk 크기 DEFAULT_BATCH_SIZE)
+     */
+    @Override
+    public List<Integer> saveAll(Collection<Member> members) throws SQLException {
+        return saveAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * batchSize 만큼 addBatch 로 모았다가 executeBatch 로 한번에 보낸다.
+     * 커넥션은 DataSourceUtils 로 획득하므로 진행중인 트랜잭션이 있으면 같은 커넥션(트랜잭션)에 참여한다.
+     * @return chunk 별 insert 된 row 수
+     */
+    public List<Integer> saveAll(Collection<Member> members, int batchSize) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive, batchSize=" + batchSize);
+        }
+        String sql = INSERT_SQL;
+
+        List<Integer> chunkCounts = new ArrayList<>((members.size() + batchSize - 1) / batchSize);
+        if (members.isEmpty()) {
+            return chunkCounts;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("saveAll");
+            pstmt = prepareStatement(con, sql);
+            int pending = 0;
+            for (Member member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+                if (++pending == batchSize) {
+                    chunkCounts.add(sum(executeBatch(pstmt, "saveAll")));
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                chunkCounts.add(sum(executeBatch(pstmt, "saveAll")));
+            }
+            return chunkCounts;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * 조회 없이 한번의 merge 로 저장하거나 변경한다.
+     */
+    @Override
+    public Member upsert(Member member) throws SQLException {
+        String sql = UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("upsert");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            executeUpdate(pstmt, "upsert");
+            return member;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * JDBC batch 로 여러 회원을 한번에 merge 한다. (기본 chunk 크기 DEFAULT_BATCH_SIZE)
+     */
+    @Override
+    public List<Integer> upsertAll(Collection<Member> members) throws SQLException {
+        return upsertAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * batchSize 만큼 모아서 merge 를 executeBatch 로 보낸다. chunk 마다 한번의 왕복이다.
+     * @return chunk 별 merge 된 row 수
+     */
+    public List<Integer> upsertAll(Collection<Member> members, int batchSize) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive, batchSize=" + batchSize);
+        }
+        String sql = UPSERT_SQL;
+
+        List<Integer> chunkCounts = new ArrayList<>((members.size() + batchSize - 1) / batchSize);
+        if (members.isEmpty()) {
+            return chunkCounts;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("upsertAll");
+            pstmt = prepareStatement(con, sql);
+            int pending = 0;
+            for (Member member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+                if (++pending == batchSize) {
+                    chunkCounts.add(sum(executeBatch(pstmt, "upsertAll")));
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                chunkCounts.add(sum(executeBatch(pstmt, "upsertAll")));
+            }
+            return chunkCounts;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
     public Member findById(String memberId) throws SQLException {
-        String sql = "select * from member where member_id = ?";
+        Member member = selectById("findById", memberId);
+        if (member == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        return member;
+    }
+
+    /**
+     * 회원이 없으면 예외 대신 Optional.empty() - 없는 회원을 자주 찾는 경우
+     */
+    @Override
+    public Optional<Member> findOptional(String memberId) throws SQLException {
+        return Optional.ofNullable(selectById("findOptional", memberId));
+    }
+
+    /**
+     * 회원 존재 여부만 확인한다. (Member 를 만들지 않음)
+     */
+    @Override
+    public boolean exists(String memberId) throws SQLException {
+        String sql = "select 1 from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection("exists");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = executeQuery(pstmt, "exists");
+            boolean exists = rs.next();
+            metrics.method("exists").recordRows(exists ? 1 : 0);
+            return exists;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * @return 회원, 없으면 null
+     */
+    private Member selectById(String method, String memberId) throws SQLException {
+        String sql = SELECT_BY_ID_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
 
         try {
-            con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            con = getConnection(method);
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, memberId);
 
-            rs = pstmt.executeQuery();
+            rs = executeQuery(pstmt, method);
             if (rs.next()) {
-                Member member = new Member();
-                member.setMemberId(rs.getString("member_id"));
-                member.setMoney(rs.getInt("money"));
-                return member;
+                metrics.method(method).recordRows(1);
+                return MemberRowMapper.COLUMNS_MAPPER.mapRow(rs);
             } else {
-                throw new NoSuchElementException("member not found memberId=" + memberId);
+                metrics.method(method).recordRows(0);
+                return null;
             }
 
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
         } finally {
-            // connection 는 여기서 닫지 않는다
-            JdbcUtils.closeResultSet(rs);
-            JdbcUtils.closeStatement(pstmt);
-//            JdbcUtils.closeConnection(con);
+            // 트랜잭션 중이면 DataSourceUtils.releaseConnection 은 커넥션을 닫지 않는다
+            close(con, pstmt, rs);
         }
 
     }
 
 
+    /**
+     * 여러 회원을 한번에 조회한다. findById 를 반복하는 대신 in (...) 한번에 최대 256 개씩 읽는다.
+     * 없는 회원은 결과에 들어가지 않는다.
+     */
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) throws SQLException {
+        return findByIds(memberIds, missingId -> {
+        });
+    }
+
+    /**
+     * @param missing 없는 회원 id 를 요청 순서대로 받는다
+     * @return 회원 id -> 회원, 요청 순서 유지
+     */
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds, Consumer<String> missing) throws SQLException {
+        Set<String> requested = new LinkedHashSet<>(memberIds);
+        Map<String, Member> found = new HashMap<>(requested.size() * 2);
+        if (requested.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection("findByIds");
+            List<String> chunk = new ArrayList<>(Math.min(requested.size(), maxInListSize()));
+            Iterator<String> it = requested.iterator();
+            while (it.hasNext()) {
+                chunk.add(it.next());
+                if (chunk.size() == maxInListSize() || !it.hasNext()) {
+                    int bucket = inListBucket(chunk.size());
+                    String sql = IN_LIST_SQL[bucket];
+                    pstmt = prepareStatement(con, sql);
+                    for (int i = 0; i < IN_LIST_BUCKETS[bucket]; i++) {
+                        pstmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    rs = executeQuery(pstmt, "findByIds");
+                    MemberRowMapper rowMapper = MemberRowMapper.COLUMNS_MAPPER;
+                    while (rs.next()) {
+                        Member member = rowMapper.mapRow(rs);
+                        found.put(member.getMemberId(), member);
+                    }
+                    closeStatement(con, pstmt, rs);
+                    rs = null;
+                    pstmt = null;
+                    chunk.clear();
+                }
+            }
+            metrics.method("findByIds").recordRows(found.size());
+
+            Map<String, Member> result = new LinkedHashMap<>(found.size() * 2);
+            for (String memberId : requested) {
+                Member member = found.get(memberId);
+                if (member != null) {
+                    result.put(memberId, member);
+                } else {
+                    missing.accept(memberId);
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * select ... for update - 조회한 row 에 트랜잭션이 끝날 때까지 쓰기 잠금을 건다.
+     * 트랜잭션 안에서 호출해야 의미가 있다. (auto commit 이면 바로 풀린다)
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) throws SQLException {
+        String sql = "select " + MemberRowMapper.COLUMNS + " from member where member_id = ? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection("findByIdForUpdate");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = executeQuery(pstmt, "findByIdForUpdate");
+            if (rs.next()) {
+                metrics.method("findByIdForUpdate").recordRows(1);
+                return MemberRowMapper.COLUMNS_MAPPER.mapRow(rs);
+            } else {
+                metrics.method("findByIdForUpdate").recordRows(0);
+                throw new MemberNotFoundException(memberId);
+            }
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+
+    }
+
+
+    /**
+     * keyset(seek) 페이지 조회 - offset 대신 member_id > afterMemberId 조건으로 PK 인덱스에서 바로 시작 위치를 찾는다.
+     * 몇 번째 페이지든 limit 만큼만 읽으므로 뒤쪽 페이지도 느려지지 않는다.
+     * @param afterMemberId 이전 페이지의 nextCursor, 첫 페이지는 null
+     */
+    public MemberPage findPage(String afterMemberId, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive, limit=" + limit);
+        }
+        String sql = afterMemberId == null
+                ? "select " + MemberRowMapper.COLUMNS + " from member order by member_id limit ?"
+                : "select " + MemberRowMapper.COLUMNS + " from member where member_id > ? order by member_id limit ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection("findPage");
+            pstmt = prepareStatement(con, sql);
+            int index = 1;
+            if (afterMemberId != null) {
+                pstmt.setString(index++, afterMemberId);
+            }
+            // 한 건 더 읽어서 다음 페이지가 있는지 확인한다
+            pstmt.setInt(index, limit + 1);
+
+            rs = executeQuery(pstmt, "findPage");
+            MemberRowMapper rowMapper = MemberRowMapper.COLUMNS_MAPPER;
+            List<Member> members = new ArrayList<>(limit);
+            boolean hasNext = false;
+            while (rs.next()) {
+                if (members.size() == limit) {
+                    hasNext = true;
+                    break;
+                }
+                members.add(rowMapper.mapRow(rs));
+            }
+            metrics.method("findPage").recordRows(members.size());
+            String nextCursor = hasNext ? members.get(members.size() - 1).getMemberId() : null;
+            return new MemberPage(members, nextCursor);
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 전체 회원을 Stream 으로 하나씩 읽는다. (기본 fetch 크기 DEFAULT_FETCH_SIZE)
+     */
+    @Override
+    public Stream<Member> streamAll() throws SQLException {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * 전체 회원을 List 로 모으지 않고 forward-only ResultSet 에서 필요할 때마다 한 row 씩 꺼낸다.
+     * 반드시 close 해야 한다. (try-with-resources) close 하면 ResultSet, Statement 를 닫고 커넥션을 반환한다.
+     * 커넥션은 DataSourceUtils 로 획득하므로 트랜잭션 안이면 트랜잭션이 끝날 때까지 유지된다.
+     */
+    public Stream<Member> streamAll(int fetchSize) throws SQLException {
+        String sql = "select " + MemberRowMapper.COLUMNS + " from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection("streamAll");
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            DataSourceUtils.applyTransactionTimeout(pstmt, dataSource);
+            rs = executeQuery(pstmt, "streamAll");
+
+            MemberSpliterator spliterator = new MemberSpliterator(con, pstmt, rs, MemberRowMapper.COLUMNS_MAPPER);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } catch (SQLException e) {
+            log.error("db error", e);
+            close(con, pstmt, rs);
+            throw e;
+        }
+    }
+
+    private class MemberSpliterator extends Spliterators.AbstractSpliterator<Member> {
+        private final Connection con;
+        private final PreparedStatement pstmt;
+        private final ResultSet rs;
+        private final MemberRowMapper rowMapper;
+        private long rowCount;
+        private boolean closed;
+
+        private MemberSpliterator(Connection con, PreparedStatement pstmt, ResultSet rs, MemberRowMapper rowMapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.con = con;
+            this.pstmt = pstmt;
+            this.rs = rs;
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Member> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!rs.next()) {
+                    // 끝까지 읽었으면 close 를 기다리지 않고 바로 반환한다
+                    close();
+                    return false;
+                }
+                Member member = rowMapper.mapRow(rs);
+                rowCount++;
+                action.accept(member);
+                return true;
+            } catch (SQLException e) {
+                log.error("db error", e);
+                close();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                metrics.method("streamAll").recordRows(rowCount);
+                MemberRepositoryV3.this.close(con, pstmt, rs);
+            }
+        }
+    }
+
+
+    @Override
     public void update(String memberId, int money) throws SQLException {
-        String sql = "update member set money=? where member_id=?";
+        String sql = UPDATE_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            con = getConnection("update");
+            pstmt = prepareStatement(con, sql);
             pstmt.setInt(1, money);
             pstmt.setString(2, memberId);
-            int resultSize = pstmt.executeUpdate();
-            log.info("resultSize={}", resultSize);
+            executeUpdate(pstmt, "update");
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
         } finally {
-            JdbcUtils.closeStatement(pstmt);
+            close(con, pstmt, null);
         }
 
     }
 
 
+    /**
+     * 낙관적 잠금 update - 조회했을 때의 version 과 같을 때만 변경한다.
+     * @return 변경 여부, 그 사이 다른 트랜잭션이 먼저 변경했으면 false
+     */
+    @Override
+    public boolean update(String memberId, int money, long expectedVersion) throws SQLException {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("updateWithVersion");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, expectedVersion);
+            int resultSize = executeUpdate(pstmt, "updateWithVersion");
+            return resultSize == 1;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+
+    /**
+     * 낙관적 잠금 update 를 JDBC batch 로 한번에 실행한다. (MemberUnitOfWork 의 flush)
+     * 각 회원의 version 은 조회했을 때의 값이어야 한다.
+     * @return version 이 달라서 변경되지 않은 회원 id
+     */
+    @Override
+    public List<String> updateAll(Collection<Member> members) throws SQLException {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        List<String> rejected = new ArrayList<>();
+        if (members.isEmpty()) {
+            return rejected;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("updateAll");
+            pstmt = prepareStatement(con, sql);
+            List<String> chunk = new ArrayList<>(Math.min(members.size(), DEFAULT_BATCH_SIZE));
+            for (Member member : members) {
+                pstmt.setInt(1, member.getMoney());
+                pstmt.setString(2, member.getMemberId());
+                pstmt.setLong(3, member.getVersion());
+                pstmt.addBatch();
+                chunk.add(member.getMemberId());
+                if (chunk.size() == DEFAULT_BATCH_SIZE) {
+                    collectRejected(executeBatch(pstmt, "updateAll"), chunk, rejected);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                collectRejected(executeBatch(pstmt, "updateAll"), chunk, rejected);
+            }
+            return rejected;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+
+    /**
+     * 회원별 잔액을 JDBC batch 로 한번에 덮어쓴다. (InMemoryLedger 의 write-behind)
+     * @return 변경되지 않은 회원 id (회원이 없음)
+     */
+    @Override
+    public List<String> updateMoneyAll(Map<String, Integer> balances) throws SQLException {
+        String sql = UPDATE_SQL;
+
+        List<String> rejected = new ArrayList<>();
+        if (balances.isEmpty()) {
+            return rejected;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("updateMoneyAll");
+            pstmt = prepareStatement(con, sql);
+            List<String> chunk = new ArrayList<>(Math.min(balances.size(), DEFAULT_BATCH_SIZE));
+            for (Map.Entry<String, Integer> balance : balances.entrySet()) {
+                pstmt.setInt(1, balance.getValue());
+                pstmt.setString(2, balance.getKey());
+                pstmt.addBatch();
+                chunk.add(balance.getKey());
+                if (chunk.size() == DEFAULT_BATCH_SIZE) {
+                    collectRejected(executeBatch(pstmt, "updateMoneyAll"), chunk, rejected);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                collectRejected(executeBatch(pstmt, "updateMoneyAll"), chunk, rejected);
+            }
+            return rejected;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+
+    /**
+     * money = money + ? 로 DB 에서 바로 더한다. (조회 없이 한번의 update)
+     * @return 변경된 row 수, 회원이 없으면 0
+     */
+    @Override
+    public int deposit(String memberId, int money) throws SQLException {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("deposit");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            return executeUpdate(pstmt, "deposit");
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * money = money - ? 로 DB 에서 바로 뺀다. 잔액이 부족하면 where 조건에 걸려 변경되지 않는다.
+     * @return 변경된 row 수, 회원이 없거나 잔액이 부족하면 0
+     */
+    @Override
+    public int withdraw(String memberId, int money) throws SQLException {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("withdraw");
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, money);
+            return executeUpdate(pstmt, "withdraw");
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+
+    /**
+     * 회원별 증감액(delta) 을 JDBC batch 로 한번에 반영한다. money = money + delta
+     * 결과가 음수가 되는 경우는 where 조건에 걸려 변경되지 않는다.
+     * @return 변경되지 않은 회원 id (회원이 없거나 잔액 부족)
+     */
+    @Override
+    public List<String> addMoneyAll(Map<String, Integer> deltas) throws SQLException {
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+
+        List<String> rejected = new ArrayList<>();
+        if (deltas.isEmpty()) {
+            return rejected;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection("addMoneyAll");
+            pstmt = prepareStatement(con, sql);
+            List<String> chunk = new ArrayList<>(Math.min(deltas.size(), DEFAULT_BATCH_SIZE));
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                pstmt.setInt(1, delta.getValue());
+                pstmt.setString(2, delta.getKey());
+                pstmt.setInt(3, delta.getValue());
+                pstmt.addBatch();
+                chunk.add(delta.getKey());
+                if (chunk.size() == DEFAULT_BATCH_SIZE) {
+                    collectRejected(executeBatch(pstmt, "addMoneyAll"), chunk, rejected);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                collectRejected(executeBatch(pstmt, "addMoneyAll"), chunk, rejected);
+            }
+            return rejected;
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+
+    @Override
     public void delete(String memberId) throws SQLException {
-        String sql = "delete from member where member_id=?";
+        String sql = DELETE_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
 
         try {
-            con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            con = getConnection("delete");
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, memberId);
-            pstmt.executeUpdate();
+            executeUpdate(pstmt, "delete");
         } catch (SQLException e) {
             log.error("db error", e);
             throw e;
@@ -123,19 +846,99 @@ public class MemberRepositoryV3 {
 
     }
 
+    private static int maxInListSize() {
+        return IN_LIST_BUCKETS[IN_LIST_BUCKETS.length - 1];
+    }
+
+    private static int inListBucket(int size) {
+        for (int i = 0; i < IN_LIST_BUCKETS.length; i++) {
+            if (IN_LIST_BUCKETS[i] >= size) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("in list too large, size=" + size);
+    }
+
+    private void collectRejected(int[] updateCounts, List<String> memberIds, List<String> rejected) {
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                rejected.add(memberIds.get(i));
+            }
+        }
+    }
+
+    private int sum(int[] updateCounts) {
+        int total = 0;
+        for (int count : updateCounts) {
+            // 드라이버가 건수를 주지 않는 경우(SUCCESS_NO_INFO) insert 한 건으로 본다
+            total += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return total;
+    }
+
+    private PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        PreparedStatement pstmt = statementCache == null
+                ? con.prepareStatement(sql)
+                : statementCache.prepareStatement(con, sql);
+        // 트랜잭션에 timeout 이 있으면 남은 시간을 query timeout 으로, 이미 지났으면 TransactionTimedOutException
+        DataSourceUtils.applyTransactionTimeout(pstmt, dataSource);
+        return pstmt;
+    }
+
     private void close(Connection con, Statement stmt, ResultSet rs) {
-        JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        // 커넥션을 풀에 돌려주기 전에 statement 를 먼저 정리해야 한다
+        closeStatement(con, stmt, rs);
         // 주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다.
         DataSourceUtils.releaseConnection(con,dataSource);
     }
 
+    private void closeStatement(Connection con, Statement stmt, ResultSet rs) {
+        JdbcUtils.closeResultSet(rs);
+        if (statementCache == null) {
+            JdbcUtils.closeStatement(stmt);
+        } else {
+            statementCache.release(con, stmt);
+        }
+    }
 
-    private Connection getConnection() throws SQLException {
+
+    private Connection getConnection(String method) throws SQLException {
+        long start = System.nanoTime();
         // 주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다
         Connection con = DataSourceUtils.getConnection(dataSource);// DataSourceUtils 는 스프링에서 지원한다
-        log.info("get connection={}, class={}", con, con.getClass());
+        metrics.method(method).recordAcquire(System.nanoTime() - start);
+        if (log.isDebugEnabled() && metrics.shouldSample()) {
+            log.debug("{} get connection={}, class={}", method, con, con.getClass());
+        }
         return con;
     }
 
+    private int executeUpdate(PreparedStatement pstmt, String method) throws SQLException {
+        MethodMetrics methodMetrics = metrics.method(method);
+        long start = System.nanoTime();
+        int resultSize = pstmt.executeUpdate();
+        methodMetrics.recordExecute(System.nanoTime() - start);
+        methodMetrics.recordRows(resultSize);
+        if (log.isDebugEnabled() && metrics.shouldSample()) {
+            log.debug("{} resultSize={}", method, resultSize);
+        }
+        return resultSize;
+    }
+
+    private int[] executeBatch(PreparedStatement pstmt, String method) throws SQLException {
+        MethodMetrics methodMetrics = metrics.method(method);
+        long start = System.nanoTime();
+        int[] updateCounts = pstmt.executeBatch();
+        methodMetrics.recordExecute(System.nanoTime() - start);
+        methodMetrics.recordRows(sum(updateCounts));
+        return updateCounts;
+    }
+
+    private ResultSet executeQuery(PreparedStatement pstmt, String method) throws SQLException {
+        long start = System.nanoTime();
+        ResultSet rs = pstmt.executeQuery();
+        metrics.method(method).recordExecute(System.nanoTime() - start);
+        return rs;
+    }
+
 }
@@ -0,0 +1,87 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * ResultSet row -> Member
+ *
+ * rs.getString("member_id") 처럼 이름으로 읽으면 row 마다 컬럼 이름을 찾는다.
+ * 조회 SQL 의 컬럼 목록은 코드에 고정되어 있으므로 SQL 상수 옆에 mapper 도 상수로 만들어 두고(forColumns), row 는 index 로 바로 읽는다.
+ * 조회 SQL 은 select * 대신 필요한 컬럼만 적는다. (COLUMNS, COLUMNS_MAPPER)
+ */
+public final class MemberRowMapper {
+
+    public static final String COLUMNS = "member_id, money, version";
+    /** select COLUMNS 결과용, member_id=1, money=2, version=3 */
+    public static final MemberRowMapper COLUMNS_MAPPER = forColumns(COLUMNS);
+
+    private static final int ABSENT = 0;
+
+    private final int memberIdIndex;
+    private final int moneyIndex;
+    private final int versionIndex;
+
+    private MemberRowMapper(int memberIdIndex, int moneyIndex, int versionIndex) {
+        this.memberIdIndex = memberIdIndex;
+        this.moneyIndex = moneyIndex;
+        this.versionIndex = versionIndex;
+    }
+
+    /**
+     * select 에 적은 컬럼 목록("member_id, money") 으로 index 를 정한다. SQL 상수와 함께 한번만 만든다.
+     */
+    public static MemberRowMapper forColumns(String columns) {
+        String[] labels = columns.split(",");
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labels[i].trim();
+        }
+        return resolve(labels);
+    }
+
+    /**
+     * 컬럼 목록을 미리 알 수 없는 쿼리용, 쿼리마다 ResultSetMetaData 로 index 를 찾는다. (캐시하지 않는다)
+     */
+    public static MemberRowMapper of(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        String[] labels = new String[metaData.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+        try {
+            return resolve(labels);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException(e.getMessage());
+        }
+    }
+
+    public Member mapRow(ResultSet rs) throws SQLException {
+        return new Member(
+                rs.getString(memberIdIndex),
+                rs.getInt(moneyIndex),
+                versionIndex == ABSENT ? 0 : rs.getLong(versionIndex));
+    }
+
+    private static MemberRowMapper resolve(String[] labels) {
+        int memberIdIndex = ABSENT;
+        int moneyIndex = ABSENT;
+        int versionIndex = ABSENT;
+        for (int i = 0; i < labels.length; i++) {
+            String label = labels[i];
+            if ("member_id".equalsIgnoreCase(label)) {
+                memberIdIndex = i + 1;
+            } else if ("money".equalsIgnoreCase(label)) {
+                moneyIndex = i + 1;
+            } else if ("version".equalsIgnoreCase(label)) {
+                versionIndex = i + 1;
+            }
+        }
+        if (memberIdIndex == ABSENT || moneyIndex == ABSENT) {
+            throw new IllegalArgumentException("member_id, money column required");
+        }
+        return new MemberRowMapper(memberIdIndex, moneyIndex, versionIndex);
+    }
+}
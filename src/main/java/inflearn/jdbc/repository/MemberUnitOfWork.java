@@ -0,0 +1,149 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 트랜잭션 범위 identity map + 변경 감지(dirty checking)
+ *
+ * - 같은 트랜잭션에서 같은 회원을 다시 조회하면 DB 에 가지 않고 처음 읽은 Member 인스턴스를 그대로 준다.
+ * - 트랜잭션 안에서는 Member 의 값만 바꾸면 된다. (update 는 아무것도 하지 않는다) 조회했을 때의 값(snapshot) 과 달라진 회원만 모아서
+ *   커밋 직전(beforeCommit) 에 JDBC batch 한번으로 반영한다. 롤백되면 아무것도 실행하지 않는다.
+ * - flush 는 조회했을 때의 version 으로 update 한다. 그 사이 다른 트랜잭션이 먼저 변경했으면 OptimisticLockingFailureException 으로 롤백된다.
+ *
+ * 세션은 트랜잭션 동기화 매니저(TransactionSynchronizationManager) 에 this 를 키로 보관한다.
+ * 트랜잭션 밖(동기화가 없을 때) 에서는 identity map 없이 저장소를 바로 호출한다. find 는 매번 조회하고, update 가 바로 반영한다.
+ *
+ * 주의! flush 전까지 변경은 DB 에 없다. 같은 트랜잭션에서 저장소를 직접 호출하는 조회(findPage, findByIds, streamAll) 는 변경 전 값을 읽고,
+ * DB 에서 계산하는 update(withdraw, deposit, addMoneyAll) 는 변경 전 값에 적용되어 version 이 올라가므로 flush 가 OptimisticLockingFailureException 으로 실패한다.
+ * 섞어 써야 하면 저장소를 호출하기 전에 flush() 를 먼저 호출한다.
+ */
+@Slf4j
+public class MemberUnitOfWork {
+
+    private final TransactionalMemberRepository repository;
+
+    public MemberUnitOfWork(TransactionalMemberRepository repository) {
+        this.repository = repository;
+    }
+
+    public Member find(String memberId) throws SQLException {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return repository.findById(memberId);
+        }
+        Session session = currentSession();
+        Member member = session.identityMap.get(memberId);
+        if (member == null) {
+            member = repository.findById(memberId);
+            session.register(member);
+        }
+        return member;
+    }
+
+    /**
+     * 변경한 회원을 반영한다.
+     * 트랜잭션 안에서는 변경 감지로 커밋 직전에 반영하므로 아무것도 하지 않고, 트랜잭션 밖에서는 조회했을 때의 version 으로 바로 update 한다.
+     */
+    public void update(Member member) throws SQLException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        if (!repository.update(member.getMemberId(), member.getMoney(), member.getVersion())) {
+            throw new OptimisticLockingFailureException("이미 변경된 회원 memberId=" + member.getMemberId()
+                    + ", version=" + member.getVersion());
+        }
+        member.setVersion(member.getVersion() + 1);
+    }
+
+    /**
+     * 지금까지 변경한 회원을 바로 반영한다. 커밋 직전에는 자동으로 호출된다. 트랜잭션 밖에서는 반영할 것이 없다.
+     */
+    public void flush() throws SQLException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            currentSession().flush();
+        }
+    }
+
+    private Session currentSession() {
+        Session session = (Session) TransactionSynchronizationManager.getResource(this);
+        if (session == null) {
+            session = new Session();
+            TransactionSynchronizationManager.bindResource(this, session);
+            TransactionSynchronizationManager.registerSynchronization(session);
+        }
+        return session;
+    }
+
+    private static final class Snapshot {
+        private final int money;
+        private final long version;
+
+        private Snapshot(int money, long version) {
+            this.money = money;
+            this.version = version;
+        }
+    }
+
+    private final class Session implements TransactionSynchronization {
+        private final Map<String, Member> identityMap = new HashMap<>();
+        private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+        private void register(Member member) {
+            identityMap.put(member.getMemberId(), member);
+            snapshots.put(member.getMemberId(), new Snapshot(member.getMoney(), member.getVersion()));
+        }
+
+        private void flush() throws SQLException {
+            // 회원 id 순서로 update 해야 동시에 flush 하는 트랜잭션끼리 데드락이 나지 않는다
+            Map<String, Member> dirty = new TreeMap<>();
+            for (Member member : identityMap.values()) {
+                Snapshot snapshot = snapshots.get(member.getMemberId());
+                if (member.getMoney() != snapshot.money) {
+                    // update 는 조회했을 때의 version 으로 비교한다
+                    member.setVersion(snapshot.version);
+                    dirty.put(member.getMemberId(), member);
+                }
+            }
+            if (dirty.isEmpty()) {
+                return;
+            }
+
+            List<String> rejected = repository.updateAll(new ArrayList<>(dirty.values()));
+            if (!rejected.isEmpty()) {
+                throw new OptimisticLockingFailureException("이미 변경된 회원 memberIds=" + rejected);
+            }
+            for (Member member : dirty.values()) {
+                member.setVersion(member.getVersion() + 1);
+                register(member);
+            }
+            log.debug("unit of work flushed, members={}", dirty.keySet());
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (readOnly) {
+                return;
+            }
+            try {
+                flush();
+            } catch (SQLException e) {
+                throw repository.translate("unit of work flush", e);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(MemberUnitOfWork.this);
+        }
+    }
+}
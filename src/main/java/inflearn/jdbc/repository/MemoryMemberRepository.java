@@ -0,0 +1,192 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.exception.MemberNotFoundException;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 메모리 회원 저장소 - ConcurrentHashMap
+ *
+ * - 저장한 Member 는 바꾸지 않고 변경할 때마다 새 Member 로 교체한다. 조회하면 복사본을 준다. (호출한 쪽이 값을 바꿔도 저장소에는 영향이 없다)
+ * - 한 회원에 대한 변경 하나하나는 원자적이다. 여러 회원에 걸친 변경이나 트랜잭션 롤백, row 잠금은 없다.
+ *   그래서 TransactionalMemberRepository 를 구현하지 않는다. MemberServiceV3_3 에 넣으면 잠금이 필요한 이체(accountTransferWithLock) 는 쓸 수 없고,
+ *   나머지 이체는 중간에 실패해도 앞의 변경이 되돌려지지 않는다.
+ * - 여러건 변경(saveAll, addMoneyAll ...) 은 중간에 실패하면 앞의 회원까지만 반영된다.
+ * - version 은 JDBC 구현과 같이 변경할 때마다 1 증가한다.
+ *
+ * 테스트, 로컬 개발용
+ */
+public class MemoryMemberRepository implements MemberRepository {
+
+    private final ConcurrentHashMap<String, Member> store = new ConcurrentHashMap<>();
+
+    @Override
+    public Member save(Member member) throws SQLIntegrityConstraintViolationException {
+        Member saved = new Member(member.getMemberId(), member.getMoney(), 0);
+        if (store.putIfAbsent(member.getMemberId(), saved) != null) {
+            throw new SQLIntegrityConstraintViolationException("duplicate member memberId=" + member.getMemberId());
+        }
+        return member;
+    }
+
+    @Override
+    public List<Integer> saveAll(Collection<Member> members) throws SQLIntegrityConstraintViolationException {
+        for (Member member : members) {
+            save(member);
+        }
+        return List.of(members.size());
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        store.merge(member.getMemberId(), new Member(member.getMemberId(), member.getMoney(), 0),
+                (existing, inserted) -> new Member(existing.getMemberId(), member.getMoney(), existing.getVersion() + 1));
+        return member;
+    }
+
+    @Override
+    public List<Integer> upsertAll(Collection<Member> members) {
+        for (Member member : members) {
+            upsert(member);
+        }
+        return List.of(members.size());
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        Member member = store.get(memberId);
+        if (member == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        return copy(member);
+    }
+
+    @Override
+    public Optional<Member> findOptional(String memberId) {
+        Member member = store.get(memberId);
+        return member == null ? Optional.empty() : Optional.of(copy(member));
+    }
+
+    @Override
+    public boolean exists(String memberId) {
+        return store.containsKey(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds, Consumer<String> missing) {
+        Map<String, Member> result = new LinkedHashMap<>(memberIds.size() * 2);
+        for (String memberId : memberIds) {
+            if (result.containsKey(memberId)) {
+                continue;
+            }
+            Member member = store.get(memberId);
+            if (member == null) {
+                missing.accept(memberId);
+            } else {
+                result.put(memberId, copy(member));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 지금 저장된 회원의 복사본, 만드는 동안의 변경은 보일 수도 있고 안 보일 수도 있다
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        return store.values().stream().map(MemoryMemberRepository::copy);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        store.computeIfPresent(memberId, (id, member) -> new Member(id, money, member.getVersion() + 1));
+    }
+
+    @Override
+    public boolean update(String memberId, int money, long expectedVersion) {
+        boolean[] updated = new boolean[1];
+        store.computeIfPresent(memberId, (id, member) -> {
+            if (member.getVersion() != expectedVersion) {
+                return member;
+            }
+            updated[0] = true;
+            return new Member(id, money, member.getVersion() + 1);
+        });
+        return updated[0];
+    }
+
+    @Override
+    public List<String> updateAll(Collection<Member> members) {
+        List<String> rejected = new ArrayList<>();
+        for (Member member : members) {
+            if (!update(member.getMemberId(), member.getMoney(), member.getVersion())) {
+                rejected.add(member.getMemberId());
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public int deposit(String memberId, int money) {
+        return addMoney(memberId, money) ? 1 : 0;
+    }
+
+    @Override
+    public int withdraw(String memberId, int money) {
+        return addMoney(memberId, -money) ? 1 : 0;
+    }
+
+    @Override
+    public List<String> addMoneyAll(Map<String, Integer> deltas) {
+        List<String> rejected = new ArrayList<>();
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            if (!addMoney(delta.getKey(), delta.getValue())) {
+                rejected.add(delta.getKey());
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        store.remove(memberId);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public void clearStore() {
+        store.clear();
+    }
+
+    /**
+     * @return 변경 여부, 회원이 없거나 결과가 음수면 false
+     */
+    private boolean addMoney(String memberId, int delta) {
+        boolean[] updated = new boolean[1];
+        store.computeIfPresent(memberId, (id, member) -> {
+            int money = member.getMoney() + delta;
+            if (money < 0) {
+                return member;
+            }
+            updated[0] = true;
+            return new Member(id, money, member.getVersion() + 1);
+        });
+        return updated[0];
+    }
+
+    private static Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
@@ -0,0 +1,44 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+import org.springframework.dao.DataAccessException;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 스프링 트랜잭션에 참여하는 회원 저장소
+ *
+ * - 트랜잭션 안에서 호출한 변경은 그 트랜잭션과 함께 커밋되고, 롤백되면 모두 되돌려진다. (여러건 변경 saveAll, addMoneyAll ... 도)
+ * - findByIdForUpdate 로 트랜잭션이 끝날 때까지 row 를 잠글 수 있다.
+ * - updateMoneyAll 은 여러 회원의 잔액을 한 트랜잭션으로 덮어쓴다. (write-behind 반영)
+ *
+ * 서비스는 MemberRepository 에 의존하고, 잠금이나 unit of work 가 필요한 경로만 MemberRepository.transactional() 로 이 기능을 꺼낸다.
+ * 롤백과 잠금이 없는 구현(MemoryMemberRepository) 은 이 인터페이스를 구현하지 않는다.
+ */
+public interface TransactionalMemberRepository extends MemberRepository {
+
+    /**
+     * 조회하면서 트랜잭션이 끝날 때까지 다른 트랜잭션의 변경을 막는다. (select ... for update)
+     */
+    Member findByIdForUpdate(String memberId) throws SQLException;
+
+    /**
+     * 회원별 잔액을 그대로 덮어쓴다.
+     * @return 변경되지 않은 회원 id (회원이 없음)
+     */
+    List<String> updateMoneyAll(Map<String, Integer> balances) throws SQLException;
+
+    /**
+     * 트랜잭션 콜백처럼 SQLException 을 던질 수 없는 곳에서 스프링 예외 계층(DataAccessException) 으로 바꾼다.
+     * @param task 어떤 작업이었는지, 예외 메시지에 들어간다
+     */
+    DataAccessException translate(String task, SQLException e);
+
+    @Override
+    default Optional<TransactionalMemberRepository> transactional() {
+        return Optional.of(this);
+    }
+}
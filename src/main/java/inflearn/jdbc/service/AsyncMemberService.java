@@ -0,0 +1,136 @@
+package inflearn.jdbc.service;
+
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 비동기 이체/조회 API - 호출한 쓰레드(이벤트 루프) 를 막지 않고 CompletableFuture 를 돌려준다.
+ *
+ * - JDBC 는 블로킹이므로 전용 쓰레드 풀에서 실행한다. 쓰레드 수는 커넥션 풀 크기와 맞춘다. (더 많으면 Hikari 앞에서 기다리기만 한다)
+ * - 대기열은 queueCapacity 로 제한한다(bulkhead). 가득 차면 기다리지 않고 RejectedExecutionException 으로 바로 실패시킨다.
+ * - 요청마다 timeout(마감 시간) 을 받는다.
+ *   대기열에서 마감이 지나면 DB 에 가지 않고 버린다.
+ *   실행할 때는 남은 시간을 트랜잭션 timeout 으로 넘겨서 리포지토리가 query timeout 으로 적용한다.
+ *   마감이 지나면 future 는 TimeoutException 으로 끝난다.
+ *
+ * 이체는 MemberServiceV3_3.accountTransfer 를 TransactionTemplate 트랜잭션 안에서 호출한다. (@Transactional 은 이 트랜잭션에 참여)
+ */
+@Slf4j
+public class AsyncMemberService implements AutoCloseable {
+
+    private final MemberServiceV3_3 memberService;
+    private final MemberRepository memberRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+
+    /**
+     * @param threads       JDBC 실행 쓰레드 수, 커넥션 풀 maximumPoolSize 와 같게
+     * @param queueCapacity 실행을 기다릴 수 있는 요청 수
+     */
+    public AsyncMemberService(MemberServiceV3_3 memberService, MemberRepository memberRepository,
+                              PlatformTransactionManager transactionManager, int threads, int queueCapacity) {
+        this.memberService = memberService;
+        this.memberRepository = memberRepository;
+        this.transactionManager = transactionManager;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "member-jdbc-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public CompletableFuture<Void> accountTransfer(String fromId, String toId, int money, Duration timeout) {
+        return submit(timeout, false, () -> {
+            memberService.accountTransfer(fromId, toId, money);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Member> findById(String memberId, Duration timeout) {
+        return submit(timeout, true, () -> memberRepository.findById(memberId));
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Duration timeout, boolean readOnly, SqlCall<T> call) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(future, deadline, readOnly, call));
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            future.completeExceptionally(e);
+            return future;
+        }
+        // 쓰레드가 막혀 있어도 호출한 쪽은 마감 시간에 결과를 받는다
+        return future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private <T> void run(CompletableFuture<T> future, long deadline, boolean readOnly, SqlCall<T> call) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (future.isDone() || remainingNanos <= 0) {
+            expiredCount.increment();
+            future.completeExceptionally(new TimeoutException("deadline exceeded before execution"));
+            return;
+        }
+
+        TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+        txTemplate.setReadOnly(readOnly);
+        // 트랜잭션 timeout 은 초 단위, 남은 시간을 올림
+        long nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+        txTemplate.setTimeout((int) ((remainingNanos + nanosPerSecond - 1) / nanosPerSecond));
+        try {
+            future.complete(txTemplate.execute(status -> {
+                try {
+                    return call.call();
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+}
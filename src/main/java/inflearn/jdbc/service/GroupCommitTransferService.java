@@ -0,0 +1,237 @@
+package inflearn.jdbc.service;
+
+import inflearn.jdbc.repository.TransactionalMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 그룹 커밋 이체
+ *
+ * 이체마다 커밋하면 커밋마다 DB 로그 쓰기(fsync) 를 한다. 여기서는 동시에 들어온 이체를 모아서 하나의 트랜잭션으로 실행하고 한번만 커밋한다.
+ * - 첫 이체가 도착한 뒤 maxWait 동안, 또는 maxBatchSize 개가 모일 때까지 모은다.
+ * - 이체마다 savepoint 를 만든다. 실패한 이체는 savepoint 로 되돌리고 그 이체의 future 만 실패시킨다. 나머지는 그대로 커밋된다.
+ * - 성공한 이체의 future 는 커밋이 끝난 뒤에 완료된다. 커밋이 실패하면 그 그룹의 성공한 이체도 모두 실패한다.
+ * - future 는 completionExecutor 에서 완료한다. 이어서 실행되는 콜백이 커밋 쓰레드를 붙잡지 않게 한다.
+ * - close 하면 새 요청을 받지 않고, 그 전에 접수된 요청은 처리한 뒤 커밋 쓰레드가 끝난다. (큐에 종료 표시를 넣는다)
+ *
+ * 이체는 MemberServiceV3_3.accountTransferAtomic 을 호출한다. (조회 없이 withdraw / deposit)
+ * 스프링 트랜잭션 프록시를 거치면 안에서 실패했을 때 바깥 트랜잭션 전체가 rollback-only 가 되므로 프록시가 아닌 인스턴스를 받는다.
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    // 큐에 넣으면 커밋 쓰레드가 그 앞의 요청까지 처리하고 끝난다
+    private static final TransferRequest SHUTDOWN = new TransferRequest(null, null, 0, null);
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final MemberServiceV3_3 memberService;
+    private final TransactionTemplate txTemplate;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final Executor completionExecutor;
+    private final BlockingQueue<TransferRequest> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    // 접수(queue.add) 와 close 를 같은 잠금으로 묶어서 close 가 비운 뒤에 들어오는 요청이 없게 한다
+    private final Object lifecycleLock = new Object();
+    private volatile boolean closed;
+
+    private final LongAdder transferCount = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+
+    public GroupCommitTransferService(TransactionalMemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                      int maxBatchSize, long maxWaitMillis) {
+        this(memberRepository, transactionManager, maxBatchSize, maxWaitMillis, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param completionExecutor future 를 완료하고 이어지는 콜백을 실행할 executor
+     */
+    public GroupCommitTransferService(TransactionalMemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                      int maxBatchSize, long maxWaitMillis, Executor completionExecutor) {
+        this(new MemberServiceV3_3(memberRepository), transactionManager, maxBatchSize, maxWaitMillis, completionExecutor);
+    }
+
+    /**
+     * @param memberService 스프링 프록시가 아닌 인스턴스 (저널을 쓰는 서비스면 성공한 이체만 저널에 남는다)
+     */
+    public GroupCommitTransferService(MemberServiceV3_3 memberService, PlatformTransactionManager transactionManager,
+                                      int maxBatchSize, long maxWaitMillis, Executor completionExecutor) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive, maxBatchSize=" + maxBatchSize);
+        }
+        if (AopUtils.isAopProxy(memberService)) {
+            throw new IllegalArgumentException("memberService must not be a proxy, memberService=" + memberService.getClass().getName());
+        }
+        this.memberService = memberService;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.completionExecutor = completionExecutor;
+        this.committer = new Thread(this::commitLoop, "group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public CompletableFuture<Void> accountTransfer(String fromId, String toId, int money) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (money <= 0) {
+            future.completeExceptionally(new IllegalArgumentException("이체 금액은 0 보다 커야 합니다 money=" + money));
+            return future;
+        }
+        synchronized (lifecycleLock) {
+            if (!closed) {
+                queue.add(new TransferRequest(fromId, toId, money, future));
+                return future;
+            }
+        }
+        future.completeExceptionally(new IllegalStateException("group commit service is closed"));
+        return future;
+    }
+
+    public long getTransferCount() {
+        return transferCount.sum();
+    }
+
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * 접수된 요청을 처리할 때까지 CLOSE_TIMEOUT_MILLIS 만큼 기다린다. 그때까지 시작하지 못한 요청은 실패로 끝낸다.
+     */
+    @Override
+    public void close() {
+        synchronized (lifecycleLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            committer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!committer.isAlive()) {
+            return;
+        }
+        log.warn("group commit did not finish in time, timeoutMillis={}", CLOSE_TIMEOUT_MILLIS);
+        List<TransferRequest> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.remove(SHUTDOWN);
+        pending.forEach(request -> request.future.completeExceptionally(new IllegalStateException("group commit service is closed")));
+        // 지금 커밋중인 그룹이 끝나면 커밋 쓰레드도 끝나도록 종료 표시를 다시 넣는다
+        queue.add(SHUTDOWN);
+    }
+
+    private void commitLoop() {
+        List<TransferRequest> group = new ArrayList<>(maxBatchSize);
+        boolean shutdown = false;
+        while (!shutdown) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (group.size() < maxBatchSize) {
+                    // 이미 와 있는 것은 기다리지 않고 가져오고, 부족하면 남은 시간만큼 기다린다
+                    queue.drainTo(group, maxBatchSize - group.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (group.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    TransferRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                group.remove(SHUTDOWN);
+                group.forEach(request -> fail(request, new IllegalStateException("group commit service is closed")));
+                return;
+            }
+            // 종료 표시 앞의 요청까지 커밋하고 끝난다 (close 가 접수를 먼저 막으므로 뒤에는 요청이 없다)
+            shutdown = group.remove(SHUTDOWN);
+            try {
+                if (!group.isEmpty()) {
+                    commitGroup(group);
+                }
+            } catch (Throwable e) {
+                // 여기서 쓰레드가 죽으면 이후 요청은 아무도 처리하지 않는다. 이 그룹만 실패시키고 계속한다
+                log.error("group commit loop failed, size={}", group.size(), e);
+                group.forEach(request -> request.future.completeExceptionally(e));
+            }
+            group.clear();
+        }
+    }
+
+    private void commitGroup(List<TransferRequest> group) {
+        List<TransferRequest> succeeded = new ArrayList<>(group.size());
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (TransferRequest request : group) {
+                    if (transferWithSavepoint(status, request)) {
+                        succeeded.add(request);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("group commit failed, size={}", group.size(), e);
+            succeeded.forEach(request -> fail(request, e));
+            return;
+        }
+        commitCount.increment();
+        transferCount.add(succeeded.size());
+        succeeded.forEach(request -> request.future.completeAsync(() -> null, completionExecutor));
+    }
+
+    private void fail(TransferRequest request, Throwable e) {
+        completionExecutor.execute(() -> request.future.completeExceptionally(e));
+    }
+
+    private boolean transferWithSavepoint(TransactionStatus status, TransferRequest request) {
+        Object savepoint = status.createSavepoint();
+        try {
+            transfer(request);
+            status.releaseSavepoint(savepoint);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            status.rollbackToSavepoint(savepoint);
+            fail(request, e);
+            return false;
+        }
+    }
+
+    private void transfer(TransferRequest request) throws SQLException {
+        memberService.accountTransferAtomic(request.fromId, request.toId, request.money);
+    }
+
+    private static final class TransferRequest {
+        private final String fromId;
+        private final String toId;
+        private final int money;
+        private final CompletableFuture<Void> future;
+
+        private TransferRequest(String fromId, String toId, int money, CompletableFuture<Void> future) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+            this.future = future;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package inflearn.jdbc.service;
 
 import inflearn.jdbc.domain.Member;
-import inflearn.jdbc.repository.MemberRepositoryV3;
-import lombok.RequiredArgsConstructor;
+import inflearn.jdbc.domain.Transfer;
+import inflearn.jdbc.exception.InsufficientBalanceException;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.journal.TransferJournal;
+import inflearn.jdbc.repository.MemberRepository;
+import inflearn.jdbc.repository.MemberUnitOfWork;
+import inflearn.jdbc.repository.TransactionalMemberRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * 트랜잭션 - @Transaction AOP
  * */
-@RequiredArgsConstructor
 @Slf4j
 public class MemberServiceV3_3 {
 
@@ -55,24 +67,250 @@ public class MemberServiceV3_3 {
     * 스프링 컨테이너와 스프링 AOP 를 사용하기 때문에 거의 사용되지 않는다.
     * */
 
-    private final MemberRepositoryV3 memberRepositoryV3;
+    // 저장소 구현(JDBC, 캐시, 메모리) 에 의존하지 않는다. 트랜잭션을 지원하지 않는 저장소는 중간에 실패해도 앞의 변경이 롤백되지 않는다
+    private final MemberRepository memberRepository;
+    // 저장소가 트랜잭션을 지원할 때만 있다
+    private final TransactionalMemberRepository transactionalRepository;
+    private final MemberUnitOfWork unitOfWork;
+    // null 이면 이체를 기록하지 않는다
+    private final TransferJournal transferJournal;
 
+    public MemberServiceV3_3(MemberRepository memberRepository) {
+        this(memberRepository, null);
+    }
+
+    public MemberServiceV3_3(MemberRepository memberRepository, TransferJournal transferJournal) {
+        this.memberRepository = memberRepository;
+        this.transactionalRepository = memberRepository.transactional().orElse(null);
+        this.unitOfWork = transactionalRepository == null ? null : new MemberUnitOfWork(transactionalRepository);
+        this.transferJournal = transferJournal;
+    }
+
+    /**
+     * 조회는 unit of work 의 identity map 을 거치고, 변경한 회원은 커밋 직전에 batch update 한번으로 반영된다.
+     * 저장소가 트랜잭션을 지원하지 않으면 조회한 값으로 바로 update 한다.
+     * 다른 이체 메서드와 같이 0 이하 금액은 IllegalArgumentException 이다. (이전에는 음수 금액이 반대 방향 이체가 되었다)
+     */
     @Transactional      // transaction 걸고 시작하겠다는 의미
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
+        validateMoney(money);
         bizLogic(fromId,toId,money);
+        journalBeforeCommit(fromId, toId, money);
+    }
+
+    /**
+     * 조회 없이 update 두번으로 끝나는 이체
+     * money = money - ? / money = money + ? 를 DB 에서 계산하므로 동시에 이체해도 갱신 손실이 없다.
+     * 출금이 안 되면 그때만 회원이 있는지 조회해서 InsufficientBalanceException / MemberNotFoundException 을 구분한다.
+     */
+    @Transactional
+    public void accountTransferAtomic(String fromId, String toId, int money) throws SQLException {
+        // 음수면 money>=? 검사를 항상 통과해서 받는 쪽 잔액이 음수가 된다
+        validateMoney(money);
+        if (memberRepository.withdraw(fromId, money) == 0) {
+            throw rejected(fromId);
+        }
+        validation(toId);
+        if (memberRepository.deposit(toId, money) == 0) {
+            throw new MemberNotFoundException(toId);
+        }
+        journalBeforeCommit(fromId, toId, money);
+    }
+
+    /**
+     * 여러 이체를 하나의 트랜잭션으로 처리한다.
+     * 이체를 회원별 증감액으로 합친 뒤 batch update 로 반영하므로 이체 건수와 상관없이 몇 번의 왕복과 커밋 한번으로 끝난다.
+     * 잔액은 합친 결과로만 검사한다. (중간에 잠깐 음수가 되는 이체 순서는 문제 삼지 않는다)
+     */
+    @Transactional
+    public void accountTransferBatch(List<Transfer> transfers) throws SQLException {
+        // 회원 id 순서로 update 해야 동시에 실행되는 batch 끼리 데드락이 나지 않는다
+        Map<String, Integer> deltas = new TreeMap<>();
+        for (Transfer transfer : transfers) {
+            validateMoney(transfer.getMoney());
+            validation(transfer.getToId());
+            deltas.merge(transfer.getFromId(), -transfer.getMoney(), Math::addExact);
+            deltas.merge(transfer.getToId(), transfer.getMoney(), Math::addExact);
+        }
+
+        List<String> rejected = memberRepository.addMoneyAll(deltas);
+        if (!rejected.isEmpty()) {
+            // 없는 회원이 있으면 잔액 부족보다 먼저 알린다
+            for (String memberId : rejected) {
+                if (!memberRepository.exists(memberId)) {
+                    throw new MemberNotFoundException(memberId);
+                }
+            }
+            throw new InsufficientBalanceException(rejected.get(0));
+        }
+        for (Transfer transfer : transfers) {
+            journalBeforeCommit(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+        }
+    }
+
+    /**
+     * 비관적 잠금 이체 - 두 회원을 select ... for update 로 잠그고 이체한다.
+     * 잠금은 항상 memberId 순서로 건다. A->B 와 B->A 가 동시에 와도 같은 순서로 기다리므로 데드락이 생기지 않는다.
+     * 저장소가 트랜잭션을 지원하지 않으면 UnsupportedOperationException
+     */
+    @Transactional
+    public void accountTransferWithLock(String fromId, String toId, int money) throws SQLException {
+        validateMoney(money);
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("같은 회원에게 이체할 수 없습니다 memberId=" + fromId);
+        }
+        if (transactionalRepository == null) {
+            throw new UnsupportedOperationException("row 잠금을 지원하지 않는 저장소 repository="
+                    + memberRepository.getClass().getSimpleName());
+        }
+        Member fromMember;
+        Member toMember;
+        if (fromId.compareTo(toId) < 0) {
+            fromMember = transactionalRepository.findByIdForUpdate(fromId);
+            toMember = transactionalRepository.findByIdForUpdate(toId);
+        } else {
+            toMember = transactionalRepository.findByIdForUpdate(toId);
+            fromMember = transactionalRepository.findByIdForUpdate(fromId);
+        }
+
+        if (fromMember.getMoney() < money) {
+            throw new InsufficientBalanceException(fromId);
+        }
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+        validation(toId);
+        memberRepository.update(toId, toMember.getMoney() + money);
+        journalBeforeCommit(fromId, toId, money);
+    }
+
+    /**
+     * 낙관적 잠금 이체 - 잠금 없이 조회하고, update 할 때 조회했던 version 과 비교한다.
+     * 그 사이 다른 트랜잭션이 먼저 변경했으면 OptimisticLockingFailureException 으로 롤백한다. (재시도는 OptimisticTransferService)
+     * update 는 memberId 순서로 실행해서 반대 방향 이체와 row 잠금 순서가 엇갈리지 않게 한다.
+     */
+    @Transactional
+    public void accountTransferOptimistic(String fromId, String toId, int money) throws SQLException {
+        validateMoney(money);
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("같은 회원에게 이체할 수 없습니다 memberId=" + fromId);
+        }
+        Member fromMember = memberRepository.findById(fromId);
+        Member toMember = memberRepository.findById(toId);
+
+        if (fromMember.getMoney() < money) {
+            throw new InsufficientBalanceException(fromId);
+        }
+        validation(toId);
+        fromMember.setMoney(fromMember.getMoney() - money);
+        toMember.setMoney(toMember.getMoney() + money);
+
+        if (fromId.compareTo(toId) < 0) {
+            updateWithVersion(fromMember);
+            updateWithVersion(toMember);
+        } else {
+            updateWithVersion(toMember);
+            updateWithVersion(fromMember);
+        }
+        journalBeforeCommit(fromId, toId, money);
+    }
+
+    private void updateWithVersion(Member member) throws SQLException {
+        if (!memberRepository.update(member.getMemberId(), member.getMoney(), member.getVersion())) {
+            throw new OptimisticLockingFailureException("이미 변경된 회원 memberId=" + member.getMemberId()
+                    + ", version=" + member.getVersion());
+        }
     }
 
     private void bizLogic(String fromId, String toId, int money) throws SQLException {
-        Member fromMember = memberRepositoryV3.findById(fromId);
-        Member toMember = memberRepositoryV3.findById(toId);
+        if (unitOfWork == null) {
+            Member fromMember = memberRepository.findById(fromId);
+            Member toMember = memberRepository.findById(toId);
+            memberRepository.update(fromId, fromMember.getMoney() - money);
+            validation(toId);
+            memberRepository.update(toId, toMember.getMoney() + money);
+            return;
+        }
+        Member fromMember = unitOfWork.find(fromId);
+        Member toMember = unitOfWork.find(toId);
+
+        fromMember.setMoney(fromMember.getMoney() - money);
+        unitOfWork.update(fromMember);
+        validation(toMember.getMemberId());
+        toMember.setMoney(toMember.getMoney() + money);
+        unitOfWork.update(toMember);
+    }
+
+    /**
+     * 커밋 직전에 append 한다. 저널 기록이 실패하면 예외가 나서 이체도 롤백된다. (저널에 없는 이체가 커밋되지 않는다)
+     * 저널에 쓴 뒤 롤백되면 취소 레코드를 append 해서 replay 에서 빠지게 한다.
+     * 커밋 결과를 모르면(STATUS_UNKNOWN) 취소하지 않고 txId 를 error 로그로 남긴다.
+     * unit of work 의 flush 가 먼저 등록되므로 flush 가 실패한 이체는 저널에 쓰지 않는다.
+     */
+    private void journalBeforeCommit(String fromId, String toId, int money) {
+        if (transferJournal == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            appendJournal(fromId, toId, money);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long txId;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                txId = appendJournal(fromId, toId, money);
+            }
 
-        memberRepositoryV3.update(fromId, fromMember.getMoney() - money);
-        validation(toMember);
-        memberRepositoryV3.update(toId, toMember.getMoney() + money);
+            @Override
+            public void afterCompletion(int status) {
+                if (txId == 0 || status == STATUS_COMMITTED) {
+                    return;
+                }
+                if (status == STATUS_ROLLED_BACK) {
+                    abortJournal(txId);
+                    return;
+                }
+                log.error("journaled transfer outcome unknown, txId={}, fromId={}, toId={}, money={}",
+                        txId, fromId, toId, money);
+            }
+        });
+    }
+
+    private long appendJournal(String fromId, String toId, int money) {
+        try {
+            return transferJournal.append(fromId, toId, money);
+        } catch (IOException e) {
+            throw new UncheckedIOException("transfer journal append failed, fromId=" + fromId + ", toId=" + toId, e);
+        }
+    }
+
+    private void abortJournal(long txId) {
+        try {
+            transferJournal.abort(txId);
+        } catch (IOException | RuntimeException e) {
+            // afterCompletion 의 예외는 호출한 쪽에 전달되지 않는다
+            log.error("transfer journal abort failed, txId={}", txId, e);
+        }
+    }
+
+    /**
+     * 조건부 update 가 0 건이면 잔액 부족인지 회원이 없는지 모르므로 한번 더 조회한다. (실패한 경우에만)
+     */
+    private RuntimeException rejected(String memberId) throws SQLException {
+        if (memberRepository.exists(memberId)) {
+            return new InsufficientBalanceException(memberId);
+        }
+        return new MemberNotFoundException(memberId);
+    }
+
+    private void validateMoney(int money) {
+        if (money <= 0) {
+            throw new IllegalArgumentException("이체 금액은 0 보다 커야 합니다 money=" + money);
+        }
     }
 
-    private void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")){
+    private void validation(String toId) {
+        if (toId.equals("ex")){
             throw new IllegalStateException("이체중 예외 발생");
         }
     }
@@ -0,0 +1,106 @@
+package inflearn.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 낙관적 잠금 이체 + 재시도
+ *
+ * MemberServiceV3_3.accountTransferOptimistic 은 한번의 시도가 하나의 트랜잭션이다.
+ * 충돌(OptimisticLockingFailureException) 이 나면 트랜잭션 밖인 여기서 잠깐 쉬었다가 새 트랜잭션으로 다시 시도한다.
+ * 쉬는 시간은 min(maxBackoff, baseBackoff * 2^(n-1)) 안에서 랜덤(full jitter) 으로 정해서 충돌한 쓰레드끼리 다시 부딪히지 않게 한다.
+ *
+ * 시도/충돌 횟수를 모아두므로 충돌률을 보고 비관적 잠금(accountTransferWithLock) 과 비교해서 선택하면 된다.
+ */
+@Slf4j
+public class OptimisticTransferService {
+
+    private final MemberServiceV3_3 memberService;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final LongAdder transferCount = new LongAdder();
+    private final LongAdder attemptCount = new LongAdder();
+    private final LongAdder conflictCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    public OptimisticTransferService(MemberServiceV3_3 memberService, int maxAttempts,
+                                     long baseBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive, maxAttempts=" + maxAttempts);
+        }
+        this.memberService = memberService;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(baseBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) throws SQLException {
+        transferCount.increment();
+        for (int attempt = 1; ; attempt++) {
+            attemptCount.increment();
+            try {
+                memberService.accountTransferOptimistic(fromId, toId, money);
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                conflictCount.increment();
+                if (attempt >= maxAttempts) {
+                    exhaustedCount.increment();
+                    log.warn("optimistic transfer gave up, attempts={}, fromId={}, toId={}", attempt, fromId, toId);
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("이체 재시도 중 인터럽트", e);
+        }
+    }
+
+    public long getTransferCount() {
+        return transferCount.sum();
+    }
+
+    public long getAttemptCount() {
+        return attemptCount.sum();
+    }
+
+    public long getConflictCount() {
+        return conflictCount.sum();
+    }
+
+    /**
+     * 재시도 = 전체 시도 - 이체 요청 수
+     */
+    public long getRetryCount() {
+        return getAttemptCount() - getTransferCount();
+    }
+
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+
+    /**
+     * 충돌률 = 충돌 / 전체 시도
+     */
+    public double getConflictRate() {
+        long attempts = getAttemptCount();
+        return attempts == 0 ? 0.0 : (double) getConflictCount() / attempts;
+    }
+}
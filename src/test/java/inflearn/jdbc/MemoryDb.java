@@ -0,0 +1,68 @@
+package inflearn.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 테스트용 in-memory H2 와 member 테이블
+ * 테스트 클래스마다 다른 이름의 DB 를 써서 서로 영향을 주지 않는다. (DB_CLOSE_DELAY=-1 이라 커넥션을 다 닫아도 DB 는 남는다)
+ */
+public abstract class MemoryDb {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static final String MEMBER_DDL =
+            "create table if not exists member (member_id varchar(10), money integer not null default 0, version bigint not null default 0, primary key (member_id))";
+
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * 풀 이름은 {name}Pool
+     */
+    public static HikariDataSource hikari(String name, int maximumPoolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url(name));
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setPoolName(name + "Pool");
+        return dataSource;
+    }
+
+    public static DriverManagerDataSource driverManager(String name) {
+        return new DriverManagerDataSource(url(name), USERNAME, PASSWORD);
+    }
+
+    public static void createSchema(DataSource dataSource) throws SQLException {
+        execute(dataSource, MEMBER_DDL);
+    }
+
+    public static void dropSchema(DataSource dataSource) throws SQLException {
+        execute(dataSource, "drop table if exists member");
+    }
+
+    public static void insert(DataSource dataSource, String memberId, int money) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("merge into member(member_id, money) key(member_id) values (?, ?)")) {
+            pstmt.setString(1, memberId);
+            pstmt.setInt(2, money);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package inflearn.jdbc.cache;
+
+import inflearn.jdbc.domain.Member;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberCacheTest {
+
+    @Test
+    void hitAndMiss() {
+        MemberCache cache = new MemberCache(10, Duration.ofMinutes(1));
+
+        assertThat(cache.get("memberA")).isNull();
+        cache.put("memberA", new Member("memberA", 10000), cache.stamp());
+        assertThat(cache.get("memberA")).isEqualTo(new Member("memberA", 10000));
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void lruEviction() {
+        MemberCache cache = new MemberCache(2, Duration.ofMinutes(1));
+        cache.put("memberA", new Member("memberA", 1), cache.stamp());
+        cache.put("memberB", new Member("memberB", 2), cache.stamp());
+
+        // memberA 를 사용했으므로 가장 오래 안 쓴 것은 memberB
+        cache.get("memberA");
+        cache.put("memberC", new Member("memberC", 3), cache.stamp());
+
+        assertThat(cache.get("memberB")).isNull();
+        assertThat(cache.get("memberA")).isNotNull();
+        assertThat(cache.get("memberC")).isNotNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void ttl() throws InterruptedException {
+        MemberCache cache = new MemberCache(10, Duration.ofMillis(10));
+        cache.put("memberA", new Member("memberA", 10000), cache.stamp());
+
+        Thread.sleep(50);
+
+        assertThat(cache.get("memberA")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void staleReadIsNotPublished() {
+        MemberCache cache = new MemberCache(10, Duration.ofMinutes(1));
+
+        // 조회 시작 -> 그 사이 다른 쓰레드가 변경(invalidate) -> 조회한 값은 오래된 값이므로 버린다
+        long stamp = cache.stamp();
+        cache.invalidate("memberA");
+
+        assertThat(cache.put("memberA", new Member("memberA", 10000), stamp)).isFalse();
+        assertThat(cache.get("memberA")).isNull();
+    }
+
+    @Test
+    void returnsCopy() {
+        MemberCache cache = new MemberCache(10, Duration.ofMinutes(1));
+        cache.put("memberA", new Member("memberA", 10000), cache.stamp());
+
+        cache.get("memberA").setMoney(0);
+
+        assertThat(cache.get("memberA").getMoney()).isEqualTo(10000);
+    }
+}
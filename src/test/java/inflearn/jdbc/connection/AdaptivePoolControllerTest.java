@@ -0,0 +1,161 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 컨트롤러의 결정(목표 크기) 을 관찰한 상태(대기 스레드, 획득 시간, 타임아웃) 에 대해 확인한다.
+ * adjust() 를 직접 호출하므로 실행 시간에 의존하지 않는다.
+ */
+class AdaptivePoolControllerTest {
+
+    private static final String MEM_URL = "jdbc:h2:mem:adaptivePoolTest;DB_CLOSE_DELAY=-1";
+    private static final int MIN_POOL_SIZE = 2;
+    private static final int MAX_POOL_SIZE = 16;
+    // 테스트 중 실제 커넥션 획득이 목표를 넘지 않도록 크게 잡고, 느린 획득은 tracker 에 직접 기록한다
+    private static final long TARGET_ACQUIRE_MILLIS = 1000;
+    private static final int SHRINK_AFTER_TICKS = 3;
+
+    HikariDataSource dataSource;
+    AdaptivePoolController controller;
+    IMetricsTracker tracker;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(MEM_URL);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(MIN_POOL_SIZE);
+        dataSource.setPoolName("adaptivePool");
+        controller = new AdaptivePoolController(dataSource, MIN_POOL_SIZE, MAX_POOL_SIZE, TARGET_ACQUIRE_MILLIS, SHRINK_AFTER_TICKS);
+        // 풀 시작
+        dataSource.getConnection().close();
+        tracker = controller.create(dataSource.getPoolName(), null);
+    }
+
+    @AfterEach
+    void afterEach() {
+        controller.close();
+        dataSource.close();
+    }
+
+    @Test
+    void growByWaitingThreads() throws Exception {
+        List<Connection> held = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int i = 0; i < MIN_POOL_SIZE; i++) {
+                held.add(dataSource.getConnection());
+            }
+            List<Future<?>> waiters = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                waiters.add(executor.submit(() -> {
+                    dataSource.getConnection().close();
+                    return null;
+                }));
+            }
+            awaitWaitingThreads(3);
+
+            // 기다리는 스레드 수 만큼 늘린다
+            assertThat(controller.adjust()).isEqualTo(MIN_POOL_SIZE + 3);
+            assertThat(controller.getMaximumPoolSize()).isEqualTo(MIN_POOL_SIZE + 3);
+            for (Future<?> waiter : waiters) {
+                waiter.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void growBySlowAcquireOrTimeout() {
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(TARGET_ACQUIRE_MILLIS * 2));
+        assertThat(controller.adjust()).isEqualTo(MIN_POOL_SIZE + 1);
+
+        tracker.recordConnectionTimeout();
+        assertThat(controller.adjust()).isEqualTo(MIN_POOL_SIZE + 2);
+
+        // 한 주기의 통계는 adjust 할 때 비운다 - 느린 획득이 없으면 늘리지 않는다
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MICROSECONDS.toNanos(10));
+        assertThat(controller.adjust()).isEqualTo(MIN_POOL_SIZE + 2);
+    }
+
+    @Test
+    void growBoundedByMax() {
+        for (int i = 0; i < MAX_POOL_SIZE * 2; i++) {
+            tracker.recordConnectionTimeout();
+            controller.adjust();
+        }
+        assertThat(controller.getMaximumPoolSize()).isEqualTo(MAX_POOL_SIZE);
+        assertThat(controller.getMinimumIdle()).isEqualTo(MAX_POOL_SIZE / 2);
+    }
+
+    @Test
+    void shrinkWithoutEvictingConnections() throws SQLException {
+        for (int i = 0; i < 4; i++) {
+            tracker.recordConnectionTimeout();
+            controller.adjust();
+        }
+        int grown = controller.getMaximumPoolSize();
+        assertThat(grown).isEqualTo(MIN_POOL_SIZE + 4);
+        // 늘어난 크기만큼 커넥션을 만든다
+        List<Connection> held = new ArrayList<>();
+        for (int i = 0; i < grown; i++) {
+            held.add(dataSource.getConnection());
+        }
+        for (Connection connection : held) {
+            connection.close();
+        }
+        int totalBefore = dataSource.getHikariPoolMXBean().getTotalConnections();
+
+        // 사용률이 낮아도 SHRINK_AFTER_TICKS 번 연속이어야 한개 줄인다
+        for (int i = 0; i < SHRINK_AFTER_TICKS - 1; i++) {
+            assertThat(controller.adjust()).isEqualTo(grown);
+        }
+        assertThat(controller.adjust()).isEqualTo(grown - 1);
+
+        // 설정만 줄이고 커넥션은 닫지 않는다 (housekeeper 가 idleTimeout 뒤에 정리)
+        assertThat(dataSource.getHikariPoolMXBean().getTotalConnections()).isEqualTo(totalBefore);
+        assertThat(controller.getMinimumIdle()).isLessThan(controller.getMaximumPoolSize());
+    }
+
+    @Test
+    void shrinkToMin() {
+        tracker.recordConnectionTimeout();
+        controller.adjust();
+
+        for (int i = 0; i < MAX_POOL_SIZE * SHRINK_AFTER_TICKS; i++) {
+            controller.adjust();
+        }
+        assertThat(controller.getMaximumPoolSize()).isEqualTo(MIN_POOL_SIZE);
+        // minimumIdle 은 minPoolSize 아래로 내려가지 않는다
+        assertThat(controller.getMinimumIdle()).isEqualTo(MIN_POOL_SIZE);
+    }
+
+    private void awaitWaitingThreads(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()).isEqualTo(expected);
+    }
+}
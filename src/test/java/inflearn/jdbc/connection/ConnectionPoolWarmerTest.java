@@ -0,0 +1,76 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.metrics.RepositoryMetrics;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionPoolWarmerTest {
+
+    HikariDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.hikari("warmer", 5);
+        MemoryDb.createSchema(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void warmUp() throws SQLException {
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer(dataSource, 4, null, MemberRepositoryV3.HOT_STATEMENTS);
+
+        assertThat(warmer.warmUp()).isEqualTo(4);
+        // 만든 커넥션은 모두 풀에 반환되어 있다
+        assertThat(dataSource.getHikariPoolMXBean().getTotalConnections()).isGreaterThanOrEqualTo(4);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void cappedAtMaximumPoolSize() throws SQLException {
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer(dataSource, 100, null, MemberRepositoryV3.HOT_STATEMENTS);
+
+        assertThat(warmer.warmUp()).isEqualTo(5);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void populatesStatementCache() throws SQLException {
+        StatementCache statementCache = new StatementCache(MemberRepositoryV3.HOT_STATEMENTS.size());
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer(dataSource, 5, statementCache, MemberRepositoryV3.HOT_STATEMENTS);
+
+        warmer.warmUp();
+        assertThat(statementCache.getCachedConnectionCount()).isEqualTo(5);
+        assertThat(statementCache.getMissCount()).isEqualTo(5L * MemberRepositoryV3.HOT_STATEMENTS.size());
+
+        // 같은 캐시를 쓰는 리포지토리는 첫 조회부터 캐시된 statement 를 쓴다
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource, new RepositoryMetrics("warmer"), statementCache);
+        repository.findOptional("memberA");
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void skipsNonPooledDataSource() throws SQLException {
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer(MemoryDb.driverManager("warmer"), 4, null, MemberRepositoryV3.HOT_STATEMENTS);
+
+        assertThat(warmer.warmUp()).isZero();
+    }
+
+    @Test
+    void disabled() throws SQLException {
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer(dataSource, 0, null, MemberRepositoryV3.HOT_STATEMENTS);
+        warmer.run(null);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+}
@@ -0,0 +1,168 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 풀 크기 2, 요청의 절반은 DB 에 가기 전에 검증에서 실패
+ * 지연 커넥션 트랜잭션은 DB 에 가지 않은 요청에서 풀의 커넥션을 빌리지 않는다
+ */
+class LazyConnectionTest {
+
+    private static final int POOL_SIZE = 2;
+    private static final int REQUESTS = 40;
+
+    HikariDataSource hikari;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        hikari = MemoryDb.hikari("lazyConnection", POOL_SIZE);
+        MemoryDb.createSchema(hikari);
+        MemoryDb.insert(hikari, "memberA", 0);
+    }
+
+    @AfterEach
+    void afterEach() {
+        hikari.close();
+    }
+
+    @Test
+    void noStatementNoConnection() {
+        DataSource lazy = LazyConnectionConfig.lazy(hikari);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(lazy));
+
+        txTemplate.executeWithoutResult(status ->
+                assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isZero());
+    }
+
+    @Test
+    void sameConnectionInTransaction() throws SQLException {
+        DataSource lazy = LazyConnectionConfig.lazy(hikari);
+        MemberRepositoryV3 repository = new MemberRepositoryV3(lazy);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(lazy));
+
+        // 첫 SQL 에서 빌린 커넥션으로 트랜잭션이 유지되고, 롤백도 된다
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            deposit(repository, 1000);
+            assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+            throw new IllegalStateException("이체중 예외 발생");
+        })).isInstanceOf(IllegalStateException.class);
+
+        Member member = repository.findById("memberA");
+        assertThat(member.getMoney()).isZero();
+    }
+
+    @Test
+    void defaultsFromHikariConfig() throws SQLException {
+        try (HikariDataSource configured = MemoryDb.hikari("lazyConnectionDefaults", 1)) {
+            configured.setAutoCommit(false);
+            configured.setTransactionIsolation("TRANSACTION_SERIALIZABLE");
+            DataSource lazy = LazyConnectionConfig.lazy(configured);
+
+            // 프록시 커넥션이 실제 커넥션 없이 풀 설정을 돌려준다
+            try (Connection con = lazy.getConnection()) {
+                assertThat(con.getAutoCommit()).isFalse();
+                assertThat(con.getTransactionIsolation()).isEqualTo(Connection.TRANSACTION_SERIALIZABLE);
+            }
+            assertThat(configured.getHikariPoolMXBean()).isNull();
+        }
+    }
+
+    @Test
+    void defaultsFromProperties() throws SQLException {
+        DataSource lazy = LazyConnectionConfig.lazy(hikari, false, "REPEATABLE_READ");
+
+        try (Connection con = lazy.getConnection()) {
+            assertThat(con.getAutoCommit()).isFalse();
+            assertThat(con.getTransactionIsolation()).isEqualTo(Connection.TRANSACTION_REPEATABLE_READ);
+        }
+        assertThatThrownBy(() -> LazyConnectionConfig.isolationLevel("SNAPSHOT"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectedRequestsNeverBorrow() {
+        // 즉시 빌리는 트랜잭션은 검증에서 실패하는 요청도 커넥션을 빌린다
+        CountingDataSource eager = new CountingDataSource(hikari);
+        runRequests(eager);
+        assertThat(eager.acquired.get()).isEqualTo(REQUESTS);
+
+        // 지연 커넥션은 SQL 을 실행한 요청만 빌린다
+        CountingDataSource target = new CountingDataSource(hikari);
+        DataSource lazy = LazyConnectionConfig.lazy(target);
+        int beforeRequests = target.acquired.get();
+        runRequests(lazy);
+        assertThat(target.acquired.get() - beforeRequests).isEqualTo(REQUESTS / 2);
+    }
+
+    /**
+     * 요청의 절반은 DB 에 가기 전에 검증에서 실패한다. 실패하는 요청 안에서 풀의 커넥션을 쓰고 있는지도 확인한다.
+     * (처리량 비교는 LazyConnectionBenchmark)
+     */
+    private void runRequests(DataSource dataSource) {
+        MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        boolean lazy = dataSource instanceof LazyConnectionDataSourceProxy;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            boolean valid = i % 2 == 0;
+            try {
+                txTemplate.executeWithoutResult(status -> {
+                    if (!valid) {
+                        assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isEqualTo(lazy ? 0 : 1);
+                        validationFails();
+                    }
+                    deposit(repository, 1);
+                });
+            } catch (IllegalArgumentException e) {
+                // 검증 실패는 예상한 결과
+            }
+        }
+    }
+
+    private void validationFails() {
+        throw new IllegalArgumentException("검증 실패");
+    }
+
+    private void deposit(MemberRepositoryV3 repository, int money) {
+        try {
+            repository.deposit("memberA", money);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 대상 DataSource 에서 커넥션을 빌린 횟수
+     */
+    private static final class CountingDataSource extends DelegatingDataSource {
+        private final AtomicInteger acquired = new AtomicInteger();
+
+        private CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            acquired.incrementAndGet();
+            return super.getConnection();
+        }
+    }
+}
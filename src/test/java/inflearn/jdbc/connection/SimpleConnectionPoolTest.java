@@ -0,0 +1,122 @@
+package inflearn.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+
+    private static final String MEM_URL = "jdbc:h2:mem:poolTest;DB_CLOSE_DELAY=-1";
+
+    SimpleConnectionPool pool;
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @Test
+    void reuse() throws SQLException {
+        pool = new SimpleConnectionPool(MEM_URL, "sa", "", 2, 1000, 500);
+
+        Connection connection = pool.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        connection.close();
+
+        // close 하면 실제로 닫지 않고 풀에 반환 -> 같은 물리 커넥션을 다시 사용
+        Connection connection1 = pool.getConnection();
+        log.info("connection={}, connection1={}", connection, connection1);
+        assertThat(connection.isClosed()).isTrue();
+        assertThat(connection1.unwrap(Connection.class)).isSameAs(physical);
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        connection1.close();
+    }
+
+    @Test
+    void borrowTimeout() throws SQLException {
+        pool = new SimpleConnectionPool(MEM_URL, "sa", "", 2, 100, 500);
+        Connection connection = pool.getConnection();
+        Connection connection1 = pool.getConnection();
+
+        assertThatThrownBy(() -> pool.getConnection()).isInstanceOf(SQLTimeoutException.class);
+
+        // 하나 반환하면 다시 빌릴 수 있다
+        connection.close();
+        Connection connection2 = pool.getConnection();
+        assertThat(pool.getActiveConnections()).isEqualTo(2);
+        connection1.close();
+        connection2.close();
+        assertThat(pool.getActiveConnections()).isZero();
+    }
+
+    @Test
+    void validationOnIdle() throws SQLException {
+        // validationIdle 0 -> 빌려줄 때마다 isValid 확인
+        pool = new SimpleConnectionPool(MEM_URL, "sa", "", 2, 1000, 0);
+        Connection connection = pool.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        connection.close();
+
+        // 풀에서 쉬는 동안 커넥션이 끊어진 상황
+        physical.close();
+
+        Connection connection1 = pool.getConnection();
+        assertThat(connection1.unwrap(Connection.class)).isNotSameAs(physical);
+        assertThat(connection1.isValid(1)).isTrue();
+        connection1.close();
+    }
+
+    @Test
+    void rollbackOnReturn() throws SQLException {
+        pool = new SimpleConnectionPool(MEM_URL, "sa", "", 1, 1000, 500);
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        Connection connection1 = pool.getConnection();
+        assertThat(connection1.getAutoCommit()).isTrue();
+        connection1.close();
+    }
+
+    @Test
+    void returnDuringClose() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            pool = new SimpleConnectionPool(MEM_URL, "sa", "", 8, 1000, 500);
+            List<Connection> connections = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                connections.add(pool.getConnection());
+            }
+
+            // 반환과 close 가 겹쳐도 풀에 남는 물리 커넥션이 없다
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<Void>> returns = new ArrayList<>();
+            for (Connection connection : connections) {
+                returns.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        start.await();
+                        connection.close();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            start.countDown();
+            pool.close();
+            CompletableFuture.allOf(returns.toArray(new CompletableFuture[0])).join();
+
+            assertThat(pool.getTotalConnections()).isZero();
+        }
+    }
+}
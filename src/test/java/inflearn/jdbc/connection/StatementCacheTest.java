@@ -0,0 +1,162 @@
+package inflearn.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatementCacheTest {
+
+    private static final String SQL_1 = "select 1";
+    private static final String SQL_2 = "select 2";
+    private static final String SQL_3 = "select 3";
+    private static final String SQL_PARAM = "select cast(? as int)";
+
+    HikariDataSource dataSource;
+    StatementCache statementCache;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = MemoryDb.hikari("statementCache", 1);
+        statementCache = new StatementCache(2);
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void reuseAcrossBorrow() throws SQLException {
+        PreparedStatement first = prepareAndRelease(SQL_1);
+        // 커넥션을 풀에 반환했다가 다시 빌려도 같은 물리 커넥션이면 같은 statement
+        PreparedStatement second = prepareAndRelease(SQL_1);
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.isClosed()).isFalse();
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+        assertThat(statementCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void parametersClearedOnRelease() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, SQL_PARAM);
+            pstmt.setInt(1, 10);
+            pstmt.executeQuery().close();
+            statementCache.release(con, pstmt);
+
+            // 이전 호출의 파라미터가 남아있지 않다
+            PreparedStatement reused = statementCache.prepareStatement(con, SQL_PARAM);
+            assertThat(reused).isSameAs(pstmt);
+            assertThatThrownBy(reused::executeQuery).isInstanceOf(SQLException.class);
+            statementCache.release(con, reused);
+        }
+    }
+
+    @Test
+    void lruEviction() throws SQLException {
+        PreparedStatement first = prepareAndRelease(SQL_1);
+        prepareAndRelease(SQL_2);
+        prepareAndRelease(SQL_3);
+
+        // 커넥션당 2개 - 가장 오래된 SQL_1 이 밀려나서 닫힌다
+        assertThat(first.isClosed()).isTrue();
+        assertThat(statementCache.getEvictionCount()).isEqualTo(1);
+        assertThat(prepareAndRelease(SQL_1)).isNotSameAs(first);
+    }
+
+    @Test
+    void sameSqlInUse() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, SQL_1);
+            PreparedStatement pstmt1 = statementCache.prepareStatement(con, SQL_1);
+            assertThat(pstmt1).isNotSameAs(pstmt);
+
+            // 캐시하지 않은 쪽은 release 할 때 닫는다
+            statementCache.release(con, pstmt1);
+            statementCache.release(con, pstmt);
+            assertThat(pstmt1.isClosed()).isTrue();
+            assertThat(pstmt.isClosed()).isFalse();
+        }
+    }
+
+    @Test
+    void retiredConnection() throws SQLException {
+        PreparedStatement first = prepareAndRelease(SQL_1);
+
+        // 풀이 커넥션을 폐기 -> 드라이버가 statement 를 닫고, 새 커넥션에서 다시 prepare
+        dataSource.getHikariPoolMXBean().softEvictConnections();
+        PreparedStatement second = prepareAndRelease(SQL_1);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.isClosed()).isFalse();
+
+        // Hikari 는 폐기한 커넥션을 별도 스레드에서 닫는다
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!first.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(first.isClosed()).isTrue();
+    }
+
+    @Test
+    void reuseAcrossLazyTransactions() {
+        DataSource lazy = LazyConnectionConfig.lazy(dataSource);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(lazy));
+
+        // 트랜잭션마다 지연 프록시 커넥션은 새로 만들어지지만 물리 커넥션은 같다
+        PreparedStatement first = txTemplate.execute(status -> prepareAndRelease(lazy, SQL_1));
+        PreparedStatement second = txTemplate.execute(status -> prepareAndRelease(lazy, SQL_1));
+
+        // 첫 트랜잭션이 끝나고 풀 프록시가 반환되어도 statement 는 닫히지 않는다
+        assertThat(second).isSameAs(first);
+        assertThat(second.isClosed()).isFalse();
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+        assertThat(statementCache.getCachedConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void notCachedStatementClosed() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            Statement stmt = con.createStatement();
+            statementCache.release(con, stmt);
+            assertThat(stmt.isClosed()).isTrue();
+        }
+    }
+
+    private PreparedStatement prepareAndRelease(DataSource lazy, String sql) {
+        Connection con = DataSourceUtils.getConnection(lazy);
+        try {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.executeQuery().close();
+            statementCache.release(con, pstmt);
+            return pstmt;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(con, lazy);
+        }
+    }
+
+    private PreparedStatement prepareAndRelease(String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.executeQuery().close();
+            statementCache.release(con, pstmt);
+            return pstmt;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package inflearn.jdbc.exception;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DomainExceptionTest {
+
+    @Test
+    void memberNotFound() {
+        MemberNotFoundException e = new MemberNotFoundException("memberA");
+
+        assertThat(e).isInstanceOf(NoSuchElementException.class);
+        assertThat(e.getStackTrace()).isEmpty();
+        assertThat(e.getMemberId()).isEqualTo("memberA");
+        assertThat(e.getMessage()).isEqualTo("member not found memberId=memberA");
+    }
+
+    @Test
+    void insufficientBalance() {
+        InsufficientBalanceException e = new InsufficientBalanceException("memberA");
+
+        assertThat(e).isInstanceOf(IllegalStateException.class);
+        assertThat(e.getStackTrace()).isEmpty();
+        assertThat(e.getMessage()).isEqualTo("잔액 부족 memberId=memberA");
+    }
+}
@@ -0,0 +1,196 @@
+package inflearn.jdbc.journal;
+
+import inflearn.jdbc.domain.TransferRecord;
+import inflearn.jdbc.journal.TransferJournal.FsyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAndReplay() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0)) {
+            long first = journal.append("memberA", "memberB", 1000);
+            long second = journal.append("memberB", "memberA", 500);
+
+            assertThat(first).isEqualTo(1);
+            assertThat(second).isEqualTo(2);
+
+            List<TransferRecord> records = new ArrayList<>();
+            assertThat(journal.replay(0, records::add)).isEqualTo(2);
+            assertThat(records.get(0).getFromId()).isEqualTo("memberA");
+            assertThat(records.get(0).getToId()).isEqualTo("memberB");
+            assertThat(records.get(0).getAmount()).isEqualTo(1000);
+            assertThat(records.get(1).getTxId()).isEqualTo(2);
+
+            // afterTxId 이후만
+            List<TransferRecord> after = new ArrayList<>();
+            journal.replay(1, after::add);
+            assertThat(after).extracting(TransferRecord::getTxId).containsExactly(2L);
+        }
+    }
+
+    @Test
+    void rotateSegments() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.NEVER, 0, 0)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append("memberA", "memberB", i + 1);
+            }
+
+            assertThat(journal.segments()).hasSize(3);
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records).extracting(TransferRecord::getAmount).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        }
+    }
+
+    @Test
+    void reopenContinues() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.BATCH, 2, 10)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append("memberA", "memberB", 100);
+            }
+        }
+
+        try (TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.BATCH, 2, 10)) {
+            assertThat(journal.getLastTxId()).isEqualTo(5);
+            assertThat(journal.append("memberB", "memberA", 100)).isEqualTo(6);
+
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records).extracting(TransferRecord::getTxId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+            assertThat(journal.segments()).hasSize(2);
+        }
+    }
+
+    @Test
+    void corruptRecordStopsReplay() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0)) {
+            journal.append("memberA", "memberB", 1000);
+            journal.append("memberA", "memberB", 2000);
+            journal.append("memberA", "memberB", 3000);
+        }
+        // 두번째 레코드의 amount 를 망가뜨린다 (쓰다가 잘린 레코드)
+        try (FileChannel channel = FileChannel.open(directory.resolve("transfer-00000000000000000001.journal"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), TransferJournal.RECORD_SIZE + 16);
+        }
+
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0)) {
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+
+            assertThat(records).extracting(TransferRecord::getAmount).containsExactly(1000);
+            // 망가진 자리부터 이어서 쓰고, 그 뒤에 남아 있던 레코드는 지워졌다
+            assertThat(journal.append("memberA", "memberB", 4000)).isEqualTo(2);
+            List<TransferRecord> afterAppend = new ArrayList<>();
+            journal.replay(0, afterAppend::add);
+            assertThat(afterAppend).extracting(TransferRecord::getAmount).containsExactly(1000, 4000);
+        }
+    }
+
+    @Test
+    void retireBefore() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.NEVER, 0, 0)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append("memberA", "memberB", i + 1);
+            }
+
+            // txId 1~4 segment 만 다 반영되었다
+            assertThat(journal.retireBefore(6)).isEqualTo(1);
+            // 지금 쓰고 있는 segment 는 지우지 않는다
+            assertThat(journal.retireBefore(10)).isEqualTo(1);
+            assertThat(journal.segments()).hasSize(1);
+
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records).extracting(TransferRecord::getTxId).containsExactly(9L, 10L);
+        }
+    }
+
+    @Test
+    void maxSegmentsFailsAppend() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.NEVER, 0, 0, 2)) {
+            for (int i = 0; i < 8; i++) {
+                journal.append("memberA", "memberB", i + 1);
+            }
+
+            // replay 하지 않은 segment 를 지우지 않고 append 를 실패시킨다
+            assertThatThrownBy(() -> journal.append("memberA", "memberB", 9))
+                    .isInstanceOf(IOException.class);
+            assertThat(journal.segments()).hasSize(2);
+
+            // 반영한 segment 를 지우면 다시 쓸 수 있다
+            journal.retireBefore(4);
+            assertThat(journal.append("memberA", "memberB", 9)).isEqualTo(9);
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records).extracting(TransferRecord::getTxId).containsExactly(5L, 6L, 7L, 8L, 9L);
+        }
+    }
+
+    @Test
+    void abortedTransferNotReplayed() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 2, FsyncPolicy.NEVER, 0, 0)) {
+            journal.append("memberA", "memberB", 1000);
+            long aborted = journal.append("memberA", "memberB", 2000);
+            journal.append("memberA", "memberB", 3000);
+            // 취소 레코드가 이체와 다른 segment 에 있어도 빠진다
+            assertThat(journal.abort(aborted)).isEqualTo(4);
+
+            List<TransferRecord> records = new ArrayList<>();
+            assertThat(journal.replay(0, records::add)).isEqualTo(2);
+            assertThat(records).extracting(TransferRecord::getAmount).containsExactly(1000, 3000);
+        }
+    }
+
+    @Test
+    void appendWithBalances() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.NEVER, 0, 0)) {
+            journal.append("memberA", "memberB", 1000);
+            long txId = journal.append("memberA", "memberB", 2000, 7000, 13000);
+            journal.sync(txId);
+
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records.get(0).getFromBalance()).isNull();
+            assertThat(records.get(1).getAmount()).isEqualTo(2000);
+            assertThat(records.get(1).getFromBalance()).isEqualTo(7000);
+            assertThat(records.get(1).getToBalance()).isEqualTo(13000);
+        }
+    }
+
+    @Test
+    void retireCurrentSegmentAfterClose() throws IOException {
+        TransferJournal journal = new TransferJournal(directory, 4, FsyncPolicy.NEVER, 0, 0);
+        for (int i = 0; i < 6; i++) {
+            journal.append("memberA", "memberB", i + 1);
+        }
+        assertThat(journal.retireBefore(6)).isEqualTo(1);
+
+        journal.close();
+        assertThat(journal.retireBefore(6)).isEqualTo(1);
+        assertThat(journal.segments()).isEmpty();
+    }
+
+    @Test
+    void memberIdTooLong() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.NEVER, 0, 0)) {
+            assertThatThrownBy(() -> journal.append("가".repeat(14), "memberB", 1000))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
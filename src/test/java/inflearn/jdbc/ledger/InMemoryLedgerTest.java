@@ -0,0 +1,163 @@
+package inflearn.jdbc.ledger;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.journal.TransferJournal;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryLedgerTest {
+
+    @TempDir
+    Path journalDirectory;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV3 repository;
+    DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.hikari("ledger", 10);
+        MemoryDb.createSchema(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        MemoryDb.dropSchema(dataSource);
+        dataSource.close();
+    }
+
+    @Test
+    void transferThenFlush() throws Exception {
+        try (InMemoryLedger ledger = newLedger()) {
+            ledger.start();
+
+            ledger.transfer("memberA", "memberB", 2000);
+
+            assertThat(ledger.getBalance("memberA")).isEqualTo(8000);
+            assertThat(ledger.getBalance("memberB")).isEqualTo(12000);
+            // 아직 DB 에는 반영 전
+            assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+
+            assertThat(ledger.flush()).isEqualTo(2);
+            assertThat(repository.findById("memberA").getMoney()).isEqualTo(8000);
+            assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+            // DB 에 반영한 segment 는 지우고 지금 쓰는 segment 만 남는다
+            try (Stream<Path> files = Files.list(journalDirectory)) {
+                assertThat(files.count()).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    void rejectedTransfer() throws Exception {
+        try (InMemoryLedger ledger = newLedger()) {
+            ledger.start();
+
+            assertThatThrownBy(() -> ledger.transfer("memberA", "memberB", 20000))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> ledger.transfer("memberA", "memberX", 1000))
+                    .isInstanceOf(NoSuchElementException.class);
+
+            assertThat(ledger.getBalance("memberA")).isEqualTo(10000);
+            assertThat(ledger.flush()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    void concurrentTransfers() throws Exception {
+        try (InMemoryLedger ledger = newLedger()) {
+            ledger.start();
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                boolean forward = i % 2 == 0;
+                futures.add(executor.submit(() -> ledger.transfer(forward ? "memberA" : "memberB", forward ? "memberB" : "memberA", 10)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+        }
+
+        // close 하면 마지막 변경까지 반영한다
+        assertThat(repository.findById("memberA").getMoney() + repository.findById("memberB").getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void recoverFromJournal() throws Exception {
+        // 이전 실행이 DB 에 반영하지 못하고 남긴 저널
+        try (TransferJournal journal = new TransferJournal(journalDirectory)) {
+            journal.append("memberA", "memberB", 3000, 7000, 13000);
+            journal.append("memberB", "memberA", 1000, 12000, 8000);
+        }
+
+        try (InMemoryLedger ledger = newLedger()) {
+            ledger.start();
+
+            assertThat(ledger.getBalance("memberA")).isEqualTo(8000);
+            assertThat(repository.findById("memberA").getMoney()).isEqualTo(8000);
+            assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+        }
+        // close 하면 저널이 비어서 다음 시작에 replay 하지 않는다
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    @Test
+    void recoverAfterCrash() throws Exception {
+        InMemoryLedger crashed = newLedger();
+        crashed.start();
+        crashed.transfer("memberA", "memberB", 2000);
+
+        // flush, close 없이 죽은 원장 - 돌아간 이체는 저널에 있다
+        try (InMemoryLedger ledger = newLedger()) {
+            ledger.start();
+
+            assertThat(ledger.getBalance("memberA")).isEqualTo(8000);
+            assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void notStarted() {
+        InMemoryLedger ledger = newLedger();
+
+        assertThatThrownBy(() -> ledger.transfer("memberA", "memberB", 1000))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(ledger::flush)
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private InMemoryLedger newLedger() {
+        // write-behind 주기를 길게 잡아서 flush 는 테스트에서 직접 호출한다
+        return new InMemoryLedger(repository, transactionManager, journalDirectory, 100, 60_000);
+    }
+}
@@ -0,0 +1,70 @@
+package inflearn.jdbc.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HistogramTest {
+
+    @Test
+    void percentile() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100_000);
+        assertThat(histogram.getMax()).isEqualTo(100_000);
+        assertThat(histogram.getMean()).isCloseTo(50_000.5, within(0.001));
+        // 버킷 상대 오차 1/16 이내
+        assertThat((double) histogram.getP50()).isCloseTo(50_000, within(50_000 / 16.0));
+        assertThat((double) histogram.getP99()).isCloseTo(99_000, within(99_000 / 16.0));
+        assertThat(histogram.getP999()).isLessThanOrEqualTo(histogram.getMax());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(3);
+        histogram.record(15);
+
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(0);
+        assertThat(histogram.getP50()).isEqualTo(3);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(15);
+    }
+
+    @Test
+    void bucketCoversLongRange() {
+        assertThat(Histogram.bucketIndex(Long.MAX_VALUE)).isLessThan(960);
+        assertThat(Histogram.bucketIndex(16)).isEqualTo(16);
+    }
+
+    @Test
+    void reset() {
+        Histogram histogram = new Histogram();
+        histogram.record(1_000);
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getP99()).isZero();
+        assertThat(histogram.getMax()).isZero();
+    }
+
+    @Test
+    void repositoryMetricsSampling() {
+        RepositoryMetrics metrics = new RepositoryMetrics("test");
+        assertThat(metrics.shouldSample()).isFalse();
+
+        metrics.setDebugSampleRate(3);
+        int sampled = 0;
+        for (int i = 0; i < 9; i++) {
+            if (metrics.shouldSample()) {
+                sampled++;
+            }
+        }
+        assertThat(sampled).isEqualTo(3);
+        assertThat(metrics.method("save")).isSameAs(metrics.method("save"));
+    }
+}
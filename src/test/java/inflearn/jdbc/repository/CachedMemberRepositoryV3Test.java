@@ -0,0 +1,106 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.cache.MemberCache;
+import inflearn.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachedMemberRepositoryV3Test {
+
+    DriverManagerDataSource dataSource;
+    MemberCache cache;
+    CachedMemberRepositoryV3 repository;
+    TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.driverManager("cachedRepositoryTest");
+        MemoryDb.createSchema(dataSource);
+        MemoryDb.insert(dataSource, "memberA", 10000);
+        cache = new MemberCache(100, Duration.ofMinutes(1));
+        repository = new CachedMemberRepositoryV3(dataSource, cache);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        // 캐시에 커밋된 값을 올려둔다
+        repository.findById("memberA");
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        MemoryDb.dropSchema(dataSource);
+    }
+
+    @Test
+    void readAfterUpdateInTransactionNotCached() {
+        txTemplate.executeWithoutResult(status -> {
+            update("memberA", 5000);
+            // 트랜잭션 안에서는 변경한 값을 읽지만 커밋 전 값이라 캐시에 넣지 않는다
+            assertThat(find("memberA").getMoney()).isEqualTo(5000);
+            assertThat(cache.get("memberA")).isNull();
+        });
+    }
+
+    @Test
+    void rollbackKeepsCommittedValue() throws SQLException {
+        txTemplate.executeWithoutResult(status -> {
+            update("memberA", 5000);
+            find("memberA");
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+        assertThat(cache.get("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void commitEvictsOldValue() throws Exception {
+        txTemplate.executeWithoutResult(status -> {
+            update("memberA", 5000);
+            // 커밋 전에 다른 쓰레드(트랜잭션 밖) 가 읽으면 커밋된 이전 값을 캐시에 다시 넣는다
+            Member other = CompletableFuture.supplyAsync(() -> find("memberA")).join();
+            assertThat(other.getMoney()).isEqualTo(10000);
+        });
+
+        // 커밋이 끝난 뒤 한번 더 지웠으므로 이전 값이 남아 있지 않다
+        assertThat(cache.get("memberA")).isNull();
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(5000);
+        assertThat(cache.get("memberA").getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void transactionalOnlyIfDelegateIs() {
+        assertThat(repository.transactional()).containsSame(repository);
+
+        CachedMemberRepositoryV3 memory = new CachedMemberRepositoryV3(new MemoryMemberRepository(), cache);
+        assertThat(memory.transactional()).isEmpty();
+        assertThatThrownBy(() -> memory.findByIdForUpdate("memberA"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private Member find(String memberId) {
+        try {
+            return repository.findById(memberId);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void update(String memberId, int money) {
+        try {
+            repository.update(memberId, money);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package inflearn.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.domain.MemberPage;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberRepositoryV3Test {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV3 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.hikari("repositoryV3", 10);
+        MemoryDb.createSchema(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        MemoryDb.dropSchema(dataSource);
+        dataSource.close();
+    }
+
+    @Test
+    void saveAll() throws SQLException {
+        List<Member> members = members("bulk", 2500);
+
+        List<Integer> chunkCounts = repository.saveAll(members, 1000);
+
+        // 2500 건 -> 1000, 1000, 500
+        assertThat(chunkCounts).containsExactly(1000, 1000, 500);
+        assertThat(repository.findById("bulk002499").getMoney()).isEqualTo(2499);
+    }
+
+    @Test
+    void streamAll() throws SQLException {
+        repository.saveAll(members("bulk", 2500));
+
+        try (Stream<Member> stream = repository.streamAll(100)) {
+            long count = stream.filter(member -> member.getMemberId().startsWith("bulk")).count();
+            assertThat(count).isEqualTo(2500);
+        }
+
+        // stream 을 닫으면 커넥션이 풀에 반환된다
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void streamAllCloseEarly() throws SQLException {
+        repository.saveAll(members("bulk", 100));
+
+        try (Stream<Member> stream = repository.streamAll(10)) {
+            assertThat(stream.limit(5).count()).isEqualTo(5);
+        }
+
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void findPage() throws SQLException {
+        repository.saveAll(members("bulk", 25));
+
+        // bulk 로 시작하는 회원만 보기 위해 "bulk" 바로 앞에서 시작한다
+        List<String> memberIds = new ArrayList<>();
+        String cursor = "bulj~";
+        int pages = 0;
+        do {
+            MemberPage page = repository.findPage(cursor, 10);
+            page.getMembers().stream()
+                    .map(Member::getMemberId)
+                    .filter(memberId -> memberId.startsWith("bulk"))
+                    .forEach(memberIds::add);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null && cursor.startsWith("bulk"));
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(memberIds).hasSize(25).isSorted();
+        assertThat(memberIds.get(0)).isEqualTo("bulk000000");
+    }
+
+    @Test
+    void findByIds() throws SQLException {
+        List<Member> members = members("bulk", 300);
+        repository.saveAll(members);
+
+        List<String> memberIds = new ArrayList<>();
+        memberIds.add("bulkX1");
+        members.forEach(member -> memberIds.add(member.getMemberId()));
+        memberIds.add("bulk000007"); // 중복
+        memberIds.add("bulkX2");
+        List<String> missing = new ArrayList<>();
+
+        // 300 건 -> in (256) + in (64) 두번
+        Map<String, Member> found = repository.findByIds(memberIds, missing::add);
+
+        assertThat(found).hasSize(300);
+        assertThat(found.keySet()).first().isEqualTo("bulk000000");
+        assertThat(found.get("bulk000299").getMoney()).isEqualTo(299);
+        assertThat(missing).containsExactly("bulkX1", "bulkX2");
+        assertThat(repository.findByIds(List.of())).isEmpty();
+    }
+
+    @Test
+    void findOptionalAndExists() throws SQLException {
+        repository.save(new Member("bulkF", 1000));
+
+        assertThat(repository.findOptional("bulkF")).hasValueSatisfying(member -> assertThat(member.getMoney()).isEqualTo(1000));
+        assertThat(repository.findOptional("bulkX")).isEmpty();
+        assertThat(repository.exists("bulkF")).isTrue();
+        assertThat(repository.exists("bulkX")).isFalse();
+        assertThatThrownBy(() -> repository.findById("bulkX"))
+                .isInstanceOf(MemberNotFoundException.class)
+                .isInstanceOf(NoSuchElementException.class)
+                .hasMessage("member not found memberId=bulkX");
+    }
+
+    @Test
+    void upsert() throws SQLException {
+        repository.upsert(new Member("bulkU", 1000));
+        assertThat(repository.findById("bulkU").getMoney()).isEqualTo(1000);
+
+        // 있으면 덮어쓰고 version 이 올라간다
+        repository.upsert(new Member("bulkU", 2000));
+        Member member = repository.findById("bulkU");
+        assertThat(member.getMoney()).isEqualTo(2000);
+        assertThat(member.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void upsertAll() throws SQLException {
+        repository.saveAll(members("bulk", 500));
+
+        // 앞 500 건은 update, 뒤 500 건은 insert
+        List<Member> members = members("bulk", 1000);
+        members.forEach(member -> member.setMoney(member.getMoney() + 1));
+        List<Integer> chunkCounts = repository.upsertAll(members, 400);
+
+        assertThat(chunkCounts).containsExactly(400, 400, 200);
+        assertThat(repository.findById("bulk000000").getMoney()).isEqualTo(1);
+        assertThat(repository.findById("bulk000000").getVersion()).isEqualTo(1);
+        assertThat(repository.findById("bulk000999").getMoney()).isEqualTo(1000);
+        assertThat(repository.findById("bulk000999").getVersion()).isEqualTo(0);
+    }
+
+    @Test
+    void saveAllStoresEveryMember() throws SQLException {
+        List<Member> members = members("bulk", 30);
+
+        List<Integer> chunkCounts = repository.saveAll(members, 7);
+
+        assertThat(chunkCounts).containsExactly(7, 7, 7, 7, 2);
+        Map<String, Member> saved = repository.findByIds(List.of("bulk000000", "bulk000017", "bulk000029"));
+        assertThat(saved.values()).extracting(Member::getMoney).containsExactly(0, 17, 29);
+        assertThat(saved.values()).extracting(Member::getVersion).containsOnly(0L);
+        assertThat(repository.saveAll(List.of())).isEmpty();
+        assertThatThrownBy(() -> repository.saveAll(members, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void saveAllJoinsTransaction() throws SQLException {
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // 마지막 chunk 에서 중복 키 -> 앞 chunk 까지 모두 롤백
+        List<Member> members = members("bulk", 10);
+        members.add(new Member("bulk000003", 3));
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            try {
+                repository.saveAll(members, 5);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).hasCauseInstanceOf(SQLException.class);
+
+        assertThat(repository.exists("bulk000000")).isFalse();
+        assertThat(repository.exists("bulk000009")).isFalse();
+    }
+
+    private List<Member> members(String prefix, int count) {
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // member_id 는 varchar(10)
+            members.add(new Member(prefix + String.format("%0" + (10 - prefix.length()) + "d", i), i));
+        }
+        return members;
+    }
+}
@@ -0,0 +1,88 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberRowMapperTest {
+
+    DataSource dataSource = MemoryDb.driverManager("rowMapperTest");
+    Connection con;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        MemoryDb.createSchema(dataSource);
+        MemoryDb.execute(dataSource, "insert into member(member_id, money, version) values ('memberA', 10000, 3)");
+        con = dataSource.getConnection();
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        con.close();
+        MemoryDb.dropSchema(dataSource);
+    }
+
+    @Test
+    void mapRow() throws SQLException {
+        Member member = query("select " + MemberRowMapper.COLUMNS + " from member where member_id = 'memberA'");
+
+        assertThat(member.getMemberId()).isEqualTo("memberA");
+        assertThat(member.getMoney()).isEqualTo(10000);
+        assertThat(member.getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    void columnOrderAndMissingVersion() throws SQLException {
+        // 컬럼 순서가 달라도 이름으로 index 를 찾는다, version 이 없으면 0
+        Member member = query("select money, member_id from member where member_id = 'memberA'");
+
+        assertThat(member.getMemberId()).isEqualTo("memberA");
+        assertThat(member.getMoney()).isEqualTo(10000);
+        assertThat(member.getVersion()).isZero();
+    }
+
+    @Test
+    void forColumns() throws SQLException {
+        // SQL 상수와 같은 컬럼 목록으로 만든 mapper 는 메타데이터를 읽지 않고 index 로 읽는다
+        MemberRowMapper reordered = MemberRowMapper.forColumns("money, member_id");
+        try (PreparedStatement pstmt = con.prepareStatement("select money, member_id from member");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            Member member = reordered.mapRow(rs);
+            assertThat(member.getMemberId()).isEqualTo("memberA");
+            assertThat(member.getMoney()).isEqualTo(10000);
+            assertThat(member.getVersion()).isZero();
+        }
+
+        try (PreparedStatement pstmt = con.prepareStatement("select " + MemberRowMapper.COLUMNS + " from member");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            assertThat(MemberRowMapper.COLUMNS_MAPPER.mapRow(rs).getVersion()).isEqualTo(3);
+        }
+        assertThatThrownBy(() -> MemberRowMapper.forColumns("member_id")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void requiredColumnMissing() {
+        assertThatThrownBy(() -> query("select member_id from member")).isInstanceOf(SQLException.class);
+    }
+
+    private Member query(String sql) throws SQLException {
+        try (PreparedStatement pstmt = con.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return MemberRowMapper.of(rs).mapRow(rs);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberUnitOfWorkTest {
+
+    DriverManagerDataSource dataSource;
+    MemberRepositoryV3 repository;
+    MemberUnitOfWork unitOfWork;
+    TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.driverManager("unitOfWorkTest");
+        MemoryDb.createSchema(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+        unitOfWork = new MemberUnitOfWork(repository);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        MemoryDb.dropSchema(dataSource);
+    }
+
+    @Test
+    void identityMap() {
+        txTemplate.executeWithoutResult(status -> {
+            Member member = find("memberA");
+            Member member1 = find("memberA");
+            assertThat(member1).isSameAs(member);
+        });
+        assertThat(repository.getMetrics().method("findById").getRows().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void flushOnCommit() throws SQLException {
+        txTemplate.executeWithoutResult(status -> {
+            find("memberA").setMoney(8000);
+            find("memberB").setMoney(12000);
+            // 커밋 전에는 update 하지 않는다
+            assertThat(repository.getMetrics().method("updateAll").getExecuteNanos().getCount()).isZero();
+        });
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(8000);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+        // 두 회원을 batch 한번으로
+        assertThat(repository.getMetrics().method("updateAll").getExecuteNanos().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void notDirtyNotFlushed() {
+        txTemplate.executeWithoutResult(status -> {
+            Member member = find("memberA");
+            member.setMoney(member.getMoney() - 1000);
+            member.setMoney(member.getMoney() + 1000);
+        });
+        assertThat(repository.getMetrics().method("updateAll").getExecuteNanos().getCount()).isZero();
+    }
+
+    @Test
+    void rollbackDiscardsChanges() throws SQLException {
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            find("memberA").setMoney(0);
+            throw new IllegalStateException("이체중 예외 발생");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void optimisticConflict() throws SQLException {
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            find("memberA").setMoney(5000);
+            // 다른 트랜잭션(다른 커넥션) 이 먼저 변경
+            try {
+                new MemberRepositoryV3(MemoryDb.driverManager("unitOfWorkTest")).update("memberA", 7000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isInstanceOf(OptimisticLockingFailureException.class);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(7000);
+    }
+
+    @Test
+    void withoutTransaction() throws SQLException {
+        // identity map 없이 매번 조회하고, update 가 바로 반영한다
+        Member member = unitOfWork.find("memberA");
+        assertThat(unitOfWork.find("memberA")).isNotSameAs(member);
+
+        member.setMoney(9000);
+        unitOfWork.update(member);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+        // 이미 반영했으므로 오래된 version 으로 다시 update 하면 충돌
+        Member stale = new Member("memberA", 1, member.getVersion() - 1);
+        assertThatThrownBy(() -> unitOfWork.update(stale)).isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void flushFailureTranslated() {
+        MemberRepositoryV3 failing = new MemberRepositoryV3(dataSource) {
+            @Override
+            public List<String> updateAll(Collection<Member> members) throws SQLException {
+                throw new SQLException("syntax error", "42000");
+            }
+        };
+        MemberUnitOfWork failingUnitOfWork = new MemberUnitOfWork(failing);
+
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            try {
+                failingUnitOfWork.find("memberA").setMoney(5000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isInstanceOf(DataAccessException.class)
+                .hasCauseInstanceOf(SQLException.class);
+    }
+
+    private Member find(String memberId) {
+        try {
+            return unitOfWork.find(memberId);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package inflearn.jdbc.repository;
+
+import inflearn.jdbc.domain.Member;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryMemberRepositoryTest {
+
+    MemoryMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        repository = new MemoryMemberRepository();
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+    }
+
+    @Test
+    void crud() throws SQLException {
+        Member findMember = repository.findById("memberA");
+        assertThat(findMember.getMoney()).isEqualTo(10000);
+        assertThat(findMember.getVersion()).isEqualTo(0);
+
+        repository.update("memberA", 20000);
+        Member updatedMember = repository.findById("memberA");
+        assertThat(updatedMember.getMoney()).isEqualTo(20000);
+        assertThat(updatedMember.getVersion()).isEqualTo(1);
+
+        repository.delete("memberA");
+        assertThatThrownBy(() -> repository.findById("memberA"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void notTransactional() {
+        // 롤백과 잠금이 없으므로 잠금 이체, unit of work 에는 쓸 수 없다
+        assertThat(repository).isNotInstanceOf(TransactionalMemberRepository.class);
+        assertThat(repository.transactional()).isEmpty();
+    }
+
+    @Test
+    void duplicateSave() {
+        assertThatThrownBy(() -> repository.save(new Member("memberA", 0)))
+                .isInstanceOf(SQLIntegrityConstraintViolationException.class);
+    }
+
+    @Test
+    void findReturnsCopy() throws SQLException {
+        // 조회한 회원을 바꿔도 저장소는 그대로
+        repository.findById("memberA").setMoney(0);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void optimisticUpdate() throws SQLException {
+        Member member = repository.findById("memberA");
+
+        assertThat(repository.update("memberA", 9000, member.getVersion())).isTrue();
+        assertThat(repository.update("memberA", 8000, member.getVersion())).isFalse();
+        assertThat(repository.updateAll(List.of(new Member("memberA", 7000, 0), new Member("memberB", 7000, 0))))
+                .containsExactly("memberA");
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(7000);
+    }
+
+    @Test
+    void withdrawAndDeposit() {
+        assertThat(repository.withdraw("memberA", 20000)).isEqualTo(0);
+        assertThat(repository.withdraw("memberA", 3000)).isEqualTo(1);
+        assertThat(repository.deposit("memberB", 3000)).isEqualTo(1);
+        assertThat(repository.deposit("memberX", 3000)).isEqualTo(0);
+
+        assertThat(repository.addMoneyAll(Map.of("memberA", -8000, "memberB", 1000))).containsExactly("memberA");
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(7000);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(14000);
+    }
+
+    @Test
+    void upsert() throws SQLException {
+        repository.upsert(new Member("memberA", 5000));
+        repository.upsertAll(List.of(new Member("memberB", 6000), new Member("memberC", 7000)));
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(5000);
+        assertThat(repository.findById("memberA").getVersion()).isEqualTo(1);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(6000);
+        assertThat(repository.findById("memberC").getVersion()).isEqualTo(0);
+        assertThat(repository.size()).isEqualTo(3);
+    }
+
+    @Test
+    void findOptionalAndExists() {
+        assertThat(repository.findOptional("memberA")).hasValueSatisfying(member -> assertThat(member.getMoney()).isEqualTo(10000));
+        assertThat(repository.findOptional("memberX")).isEmpty();
+        assertThat(repository.exists("memberA")).isTrue();
+        assertThat(repository.exists("memberX")).isFalse();
+    }
+
+    @Test
+    void findByIds() {
+        List<String> missing = new ArrayList<>();
+
+        Map<String, Member> members = repository.findByIds(List.of("memberB", "memberX", "memberA"), missing::add);
+
+        assertThat(members.keySet()).containsExactly("memberB", "memberA");
+        assertThat(missing).containsExactly("memberX");
+    }
+}
@@ -0,0 +1,109 @@
+package inflearn.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncMemberServiceTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    HikariDataSource dataSource;
+    MemberRepositoryV3 repository;
+    AsyncMemberService asyncService;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        // 커넥션 1개, 쓰레드 1개, 대기열 1개
+        dataSource = MemoryDb.hikari("asyncService", 1);
+        dataSource.setConnectionTimeout(5000);
+        MemoryDb.createSchema(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+        asyncService = new AsyncMemberService(new MemberServiceV3_3(repository), repository,
+                new DataSourceTransactionManager(dataSource), 1, 1);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        asyncService.close();
+        MemoryDb.dropSchema(dataSource);
+        dataSource.close();
+    }
+
+    @Test
+    void accountTransfer() throws Exception {
+        asyncService.accountTransfer("memberA", "memberB", 2000, TIMEOUT).get(5, TimeUnit.SECONDS);
+
+        assertThat(asyncService.findById("memberA", TIMEOUT).get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void failureCompletesFuture() {
+        CompletableFuture<Void> future = asyncService.accountTransfer("memberA", "memberX", 2000, TIMEOUT);
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void rejectWhenSaturated() throws Exception {
+        CompletableFuture<Member> running;
+        CompletableFuture<Member> queued;
+        try (Connection held = dataSource.getConnection()) {
+            // 쓰레드는 커넥션을 기다리며 막히고, 대기열 1개가 차면 다음 요청은 바로 거절
+            running = asyncService.findById("memberA", TIMEOUT);
+            Thread.sleep(100);
+            queued = asyncService.findById("memberA", TIMEOUT);
+            CompletableFuture<Member> rejected = asyncService.findById("memberA", TIMEOUT);
+
+            assertThat(rejected).isCompletedExceptionally();
+            assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThat(asyncService.getRejectedCount()).isEqualTo(1);
+        }
+        assertThat(running.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(10000);
+        assertThat(queued.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void deadline() throws Exception {
+        CompletableFuture<Member> running;
+        CompletableFuture<Member> queued;
+        try (Connection held = dataSource.getConnection()) {
+            running = asyncService.findById("memberA", Duration.ofMillis(300));
+            queued = asyncService.findById("memberA", Duration.ofMillis(100));
+
+            // 쓰레드가 막혀 있어도 호출한 쪽은 마감 시간에 TimeoutException 을 받는다
+            assertThatThrownBy(() -> queued.get(1, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(TimeoutException.class);
+            assertThatThrownBy(() -> running.get(1, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(TimeoutException.class);
+        }
+        // 대기열에서 마감이 지난 요청은 DB 에 가지 않고 버려진다
+        asyncService.findById("memberA", TIMEOUT).get(5, TimeUnit.SECONDS);
+        assertThat(asyncService.getExpiredCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,155 @@
+package inflearn.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.MemoryDb;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.exception.InsufficientBalanceException;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroupCommitTransferServiceTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV3 repository;
+    GroupCommitTransferService groupCommitService;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemoryDb.hikari("groupCommit", 2);
+        MemoryDb.createSchema(dataSource);
+        repository = new MemberRepositoryV3(dataSource);
+        repository.save(new Member("memberA", 10000));
+        repository.save(new Member("memberB", 10000));
+        // 모으는 시간을 길게 잡아서 한번에 보낸 이체가 같은 그룹에 들어가게 한다
+        groupCommitService = new GroupCommitTransferService(repository, new DataSourceTransactionManager(dataSource), 100, 200);
+    }
+
+    @AfterEach
+    void afterEach() throws SQLException {
+        groupCommitService.close();
+        MemoryDb.dropSchema(dataSource);
+        dataSource.close();
+    }
+
+    @Test
+    void transfersShareOneCommit() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(groupCommitService.accountTransfer("memberA", "memberB", 100));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(11000);
+        assertThat(groupCommitService.getTransferCount()).isEqualTo(10);
+        assertThat(groupCommitService.getCommitCount()).isLessThan(10);
+    }
+
+    @Test
+    void failedTransferIsIsolated() throws Exception {
+        CompletableFuture<Void> first = groupCommitService.accountTransfer("memberA", "memberB", 1000);
+        CompletableFuture<Void> notFound = groupCommitService.accountTransfer("memberA", "memberX", 1000);
+        CompletableFuture<Void> insufficient = groupCommitService.accountTransfer("memberB", "memberA", 100000);
+        CompletableFuture<Void> last = groupCommitService.accountTransfer("memberB", "memberA", 500);
+
+        first.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> notFound.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(MemberNotFoundException.class);
+        assertThatThrownBy(() -> insufficient.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(InsufficientBalanceException.class);
+
+        // 실패한 이체의 출금(memberA -1000) 은 savepoint 로 되돌려졌다
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(9500);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(10500);
+        // 성공한 이체만 센다
+        assertThat(groupCommitService.getTransferCount()).isEqualTo(2);
+    }
+
+    @Test
+    void callbacksRunOffCommitter() throws Exception {
+        CompletableFuture<String> callbackThread = groupCommitService.accountTransfer("memberA", "memberB", 100)
+                .thenApply(ignored -> Thread.currentThread().getName());
+
+        assertThat(callbackThread.get(5, TimeUnit.SECONDS)).isNotEqualTo("group-commit");
+    }
+
+    @Test
+    void closeCompletesEveryFuture() throws Exception {
+        List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+        ExecutorService submitters = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            submitters.execute(() -> {
+                started.countDown();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(groupCommitService.accountTransfer("memberA", "memberB", 1));
+                }
+            });
+        }
+        started.await();
+        groupCommitService.close();
+        submitters.shutdown();
+        assertThat(submitters.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        // close 와 동시에 접수된 요청도 성공하거나 실패로 끝난다 (영원히 기다리는 future 가 없다)
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .handle((result, e) -> null)
+                .get(5, TimeUnit.SECONDS);
+        assertThat(futures).hasSize(800).allMatch(CompletableFuture::isDone);
+    }
+
+    @Test
+    void closeCommitsAcceptedTransfers() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(groupCommitService.accountTransfer("memberA", "memberB", 100));
+        }
+        // 모으는 시간(200ms) 이 끝나기 전에 닫아도 이미 접수된 이체는 커밋된다
+        groupCommitService.close();
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertThat(repository.findById("memberA").getMoney()).isEqualTo(9000);
+        assertThat(repository.findById("memberB").getMoney()).isEqualTo(11000);
+    }
+
+    @Test
+    void nonPositiveMoneyRejected() {
+        CompletableFuture<Void> future = groupCommitService.accountTransfer("memberA", "memberB", -100);
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void closeRejectsNewTransfers() {
+        groupCommitService.close();
+
+        CompletableFuture<Void> future = groupCommitService.accountTransfer("memberA", "memberB", 100);
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
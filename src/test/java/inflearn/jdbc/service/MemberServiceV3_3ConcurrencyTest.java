@@ -0,0 +1,155 @@
+package inflearn.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static inflearn.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 트랜잭션 - 동시 이체, 조회 없는 update / 비관적 잠금 / 낙관적 잠금
+ * A->B, B->A 를 여러 쓰레드에서 동시에 실행해도 데드락 없이 잔액 합계가 유지되는지 확인한다.
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV3_3ConcurrencyTest {
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 200;
+    private static final int INITIAL_MONEY = 100000;
+
+    @Autowired
+    private MemberRepositoryV3 memberRepositoryV3;
+    @Autowired
+    private MemberServiceV3_3 memberServiceV3_3;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        DataSource dataSource() {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(URL);
+            dataSource.setUsername(USERNAME);
+            dataSource.setPassword(PASSWORD);
+            dataSource.setMaximumPoolSize(THREADS);
+            return dataSource;
+        }
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(dataSource());
+        }
+        @Bean
+        MemberRepositoryV3 memberRepositoryV3() {
+            return new MemberRepositoryV3(dataSource());
+        }
+        @Bean
+        MemberServiceV3_3 memberServiceV3_3() {
+            return new MemberServiceV3_3(memberRepositoryV3());
+        }
+    }
+
+    @BeforeEach
+    void before() throws SQLException {
+        memberRepositoryV3.save(new Member(MEMBER_A, INITIAL_MONEY));
+        memberRepositoryV3.save(new Member(MEMBER_B, INITIAL_MONEY));
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        memberRepositoryV3.delete(MEMBER_A);
+        memberRepositoryV3.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("비관적 잠금 - 양방향 동시 이체")
+    void accountTransferWithLock() throws Exception {
+        runConcurrently("pessimistic", memberServiceV3_3::accountTransferWithLock);
+    }
+
+    @Test
+    @DisplayName("조회 없는 이체 - 양방향 동시 이체, 갱신 손실 없음")
+    void accountTransferAtomic() throws Exception {
+        runConcurrently("atomic", memberServiceV3_3::accountTransferAtomic);
+    }
+
+    @Test
+    @DisplayName("낙관적 잠금 - 양방향 동시 이체, 충돌시 재시도")
+    void accountTransferOptimistic() throws Exception {
+        OptimisticTransferService optimisticService = new OptimisticTransferService(memberServiceV3_3, 100, 1, 20);
+
+        runConcurrently("optimistic", optimisticService::accountTransfer);
+
+        log.info("attempts={}, conflicts={}, retries={}, conflictRate={}",
+                optimisticService.getAttemptCount(), optimisticService.getConflictCount(),
+                optimisticService.getRetryCount(), optimisticService.getConflictRate());
+        assertThat(optimisticService.getExhaustedCount()).isZero();
+        assertThat(optimisticService.getTransferCount()).isEqualTo(THREADS * TRANSFERS_PER_THREAD);
+    }
+
+    private void runConcurrently(String mode, TransferCall transferCall) throws Exception {
+        AtomicInteger aToB = new AtomicInteger();
+        AtomicInteger bToA = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        transferCall.transfer(MEMBER_A, MEMBER_B, 1);
+                        aToB.incrementAndGet();
+                    } else {
+                        transferCall.transfer(MEMBER_B, MEMBER_A, 1);
+                        bToA.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            // 데드락이나 잠금 타임아웃이 있으면 여기서 예외가 난다
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        executor.shutdown();
+
+        int total = THREADS * TRANSFERS_PER_THREAD;
+        log.info("mode={}, transfers={}, elapsed={}ms, throughput={}/s",
+                mode, total, elapsedMillis, total * 1000L / elapsedMillis);
+
+        Member findMemberA = memberRepositoryV3.findById(MEMBER_A);
+        Member findMemberB = memberRepositoryV3.findById(MEMBER_B);
+        assertThat(findMemberA.getMoney()).isEqualTo(INITIAL_MONEY - aToB.get() + bToA.get());
+        assertThat(findMemberB.getMoney()).isEqualTo(INITIAL_MONEY + aToB.get() - bToA.get());
+    }
+
+    interface TransferCall {
+        void transfer(String fromId, String toId, int money) throws SQLException;
+    }
+}
@@ -0,0 +1,67 @@
+package inflearn.jdbc.service;
+
+import inflearn.jdbc.cache.MemberCache;
+import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.repository.CachedMemberRepositoryV3;
+import inflearn.jdbc.repository.MemoryMemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 트랜잭션을 지원하지 않는 저장소(MemoryMemberRepository) 뒤의 MemberServiceV3_3
+ */
+class MemberServiceV3_3MemoryTest {
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private MemoryMemberRepository memoryRepository;
+    private MemberServiceV3_3 memberService;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        memoryRepository = new MemoryMemberRepository();
+        memoryRepository.save(new Member(MEMBER_A, 10000));
+        memoryRepository.save(new Member(MEMBER_B, 10000));
+        memberService = new MemberServiceV3_3(memoryRepository);
+    }
+
+    @Test
+    @DisplayName("조회 후 update 이체")
+    void accountTransfer() throws SQLException {
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(memoryRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memoryRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("캐시를 앞에 둔 메모리 저장소")
+    void accountTransferAtomicCached() throws SQLException {
+        CachedMemberRepositoryV3 cached = new CachedMemberRepositoryV3(memoryRepository, new MemberCache(100, Duration.ofMinutes(1)));
+        MemberServiceV3_3 cachedService = new MemberServiceV3_3(cached);
+        // 캐시에 올려둔 값은 이체하면서 지워진다
+        cached.findById(MEMBER_A);
+
+        cachedService.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(cached.transactional()).isEmpty();
+        assertThat(cached.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(cached.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("잠금 이체는 지원하지 않는다")
+    void accountTransferWithLockUnsupported() throws SQLException {
+        assertThatThrownBy(() -> memberService.accountTransferWithLock(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(UnsupportedOperationException.class);
+
+        assertThat(memoryRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+}
@@ -1,12 +1,19 @@
 package inflearn.jdbc.service;
 
 import inflearn.jdbc.domain.Member;
+import inflearn.jdbc.domain.Transfer;
+import inflearn.jdbc.domain.TransferRecord;
+import inflearn.jdbc.exception.InsufficientBalanceException;
+import inflearn.jdbc.exception.MemberNotFoundException;
+import inflearn.jdbc.journal.TransferJournal;
+import inflearn.jdbc.journal.TransferJournal.FsyncPolicy;
 import inflearn.jdbc.repository.MemberRepositoryV3;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -14,9 +21,15 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static inflearn.jdbc.connection.ConnectionConst.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -36,6 +49,8 @@ class MemberServiceV3_3Test {
     private MemberRepositoryV3 memberRepositoryV3;
     @Autowired
     private MemberServiceV3_3 memberServiceV3_3;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @TestConfiguration
     static class TestConfig{
@@ -110,4 +125,223 @@ class MemberServiceV3_3Test {
         assertThat(findMemberA.getMoney()).isEqualTo(10000);
         assertThat(findMemberB.getMoney()).isEqualTo(10000);
     }
+
+    @Test
+    @DisplayName("조회 없는 이체")
+    void accountTransferAtomic() throws SQLException {
+        // given
+        Member memberA = new Member(MEMBER_A, 10000);
+        Member memberB = new Member(MEMBER_B, 10000);
+        memberRepositoryV3.save(memberA);
+        memberRepositoryV3.save(memberB);
+        // when
+        memberServiceV3_3.accountTransferAtomic(memberA.getMemberId(),
+                memberB.getMemberId(),2000);
+        // then
+        Member findMemberA = memberRepositoryV3.findById(memberA.getMemberId());
+        Member findMemberB = memberRepositoryV3.findById(memberB.getMemberId());
+        assertThat(findMemberA.getMoney()).isEqualTo(8000);
+        assertThat(findMemberB.getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("조회 없는 이체 - 예외 발생시 롤백")
+    void accountTransferAtomicEx() throws SQLException {
+        // given
+        Member memberA = new Member(MEMBER_A, 10000);
+        Member memberEx = new Member(MEMBER_EX, 10000);
+        memberRepositoryV3.save(memberA);
+        memberRepositoryV3.save(memberEx);
+
+        // when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferAtomic(memberA.getMemberId(),
+                memberEx.getMemberId(),2000)).isInstanceOf(IllegalStateException.class);
+
+        // then
+        Member findMemberA = memberRepositoryV3.findById(memberA.getMemberId());
+        Member findMemberB = memberRepositoryV3.findById(memberEx.getMemberId());
+        assertThat(findMemberA.getMoney()).isEqualTo(10000);
+        assertThat(findMemberB.getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("조회 없는 이체 - 잔액 부족")
+    void accountTransferAtomicInsufficient() throws SQLException {
+        // given
+        Member memberA = new Member(MEMBER_A, 1000);
+        Member memberB = new Member(MEMBER_B, 10000);
+        memberRepositoryV3.save(memberA);
+        memberRepositoryV3.save(memberB);
+
+        // when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferAtomic(memberA.getMemberId(),
+                memberB.getMemberId(),2000)).isInstanceOf(InsufficientBalanceException.class);
+
+        // then
+        Member findMemberA = memberRepositoryV3.findById(memberA.getMemberId());
+        Member findMemberB = memberRepositoryV3.findById(memberB.getMemberId());
+        assertThat(findMemberA.getMoney()).isEqualTo(1000);
+        assertThat(findMemberB.getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("조회 없는 이체 - 회원 없음")
+    void accountTransferAtomicNotFound() throws SQLException {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_B, 10000));
+
+        // when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(MemberNotFoundException.class);
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferBatch(List.of(new Transfer(MEMBER_B, MEMBER_A, 2000))))
+                .isInstanceOf(MemberNotFoundException.class);
+
+        // then
+        assertThat(memberRepositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("이체 금액이 0 이하면 거절")
+    void nonPositiveMoney() throws SQLException {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 1000));
+
+        // when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferAtomic(MEMBER_A, MEMBER_B, -5000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferWithLock(MEMBER_A, MEMBER_B, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferOptimistic(MEMBER_A, MEMBER_B, -1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferBatch(List.of(new Transfer(MEMBER_A, MEMBER_B, -5000))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // then
+        assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("저널 기록이 실패하면 이체도 롤백")
+    void journalFailureRollsBack(@TempDir Path directory) throws Exception {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 10000));
+        TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0);
+        journal.close();
+        MemberServiceV3_3 journaled = new MemberServiceV3_3(memberRepositoryV3, journal);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // when
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            try {
+                journaled.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).hasMessageContaining("closed");
+
+        // then
+        assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("커밋된 이체는 저널에 남는다")
+    void journalAppendedBeforeCommit(@TempDir Path directory) throws Exception {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 10000));
+
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0)) {
+            MemberServiceV3_3 journaled = new MemberServiceV3_3(memberRepositoryV3, journal);
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+            // when
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    journaled.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            // then
+            List<TransferRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            assertThat(records).extracting(TransferRecord::getAmount).containsExactly(2000);
+            assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        }
+    }
+
+    @Test
+    @DisplayName("저널에 쓴 뒤 롤백된 이체는 replay 되지 않는다")
+    void journalAbortedOnRollback(@TempDir Path directory) throws Exception {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 10000));
+
+        try (TransferJournal journal = new TransferJournal(directory, 16, FsyncPolicy.ALWAYS, 1, 0)) {
+            MemberServiceV3_3 journaled = new MemberServiceV3_3(memberRepositoryV3, journal);
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+            // when - 저널 append 다음 beforeCommit 이 실패해서 롤백된다
+            assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    journaled.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        throw new IllegalStateException("commit failed");
+                    }
+                });
+            })).hasMessageContaining("commit failed");
+
+            // then
+            List<TransferRecord> records = new ArrayList<>();
+            assertThat(journal.replay(0, records::add)).isZero();
+            assertThat(journal.getLastTxId()).isEqualTo(2);
+            assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        }
+    }
+
+    @Test
+    @DisplayName("여러 이체를 한 트랜잭션으로")
+    void accountTransferBatch() throws SQLException {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 10000));
+
+        // when
+        memberServiceV3_3.accountTransferBatch(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 3000),
+                new Transfer(MEMBER_B, MEMBER_A, 1000),
+                new Transfer(MEMBER_A, MEMBER_B, 500)));
+
+        // then A: -3000 +1000 -500, B: +3000 -1000 +500
+        assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(7500);
+        assertThat(memberRepositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(12500);
+    }
+
+    @Test
+    @DisplayName("여러 이체 중 하나라도 잔액 부족이면 전체 롤백")
+    void accountTransferBatchInsufficient() throws SQLException {
+        // given
+        memberRepositoryV3.save(new Member(MEMBER_A, 10000));
+        memberRepositoryV3.save(new Member(MEMBER_B, 1000));
+
+        // when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferBatch(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 3000),
+                new Transfer(MEMBER_B, MEMBER_A, 5000))))
+                .isInstanceOf(InsufficientBalanceException.class);
+
+        // then
+        assertThat(memberRepositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+    }
 }
\ No newline at end of file